@@ -0,0 +1,90 @@
+package bench;
+
+import common.GameSettings;
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import org.openjdk.jmh.annotations.*;
+import server.EncodedMessage;
+import server.ServerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость одной рассылки GAME_STATE в зависимости от размера комнаты:
+ * сериализация для каждого получателя против одного общего кадра.
+ *
+ *   mvn -Pbench -DskipTests package
+ *   java -cp target/ColorRush-1.0-SNAPSHOT.jar org.openjdk.jmh.Main BroadcastEncodeBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastEncodeBenchmark {
+
+    @Param({"2", "10", "50", "200"})
+    public int roomSize;
+
+    private Message gameState;
+    private List<NullClientConnection> clients;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        gameState = new Message(MessageTypes.GAME_STATE);
+        gameState.setRound(3);
+        gameState.setTargetColor(GameSettings.ROUND_COLORS[1]);
+        gameState.setTimeLeft(4.2);
+        gameState.setDuration(10.0);
+        gameState.setGameStarted(true);
+        gameState.setIsRoundActive(true);
+
+        byte[] field = new byte[GameSettings.GRID_W * GameSettings.GRID_H];
+        for (int i = 0; i < field.length; i++) {
+            field[i] = (byte) random.nextInt(GameSettings.ROUND_COLORS.length);
+        }
+        gameState.setField(field);
+
+        List<Player> players = new ArrayList<>();
+        clients = new ArrayList<>();
+        ServerConfig config = new ServerConfig();
+        for (int i = 0; i < roomSize; i++) {
+            Player player = new Player("Игрок" + i);
+            player.setId(i + 1);
+            player.setX(random.nextDouble() * GameSettings.WORLD_WIDTH);
+            player.setY(random.nextDouble() * GameSettings.WORLD_HEIGHT);
+            players.add(player);
+            clients.add(new NullClientConnection(config));
+        }
+        gameState.setPlayers(players);
+    }
+
+    // Как было: каждый получатель сериализует сообщение сам
+    @Benchmark
+    public int encodePerClient() {
+        int bytes = 0;
+        for (NullClientConnection client : clients) {
+            client.sendMessage(gameState);
+            bytes += client.drain();
+        }
+        return bytes;
+    }
+
+    // Как стало: один кадр на всю рассылку
+    @Benchmark
+    public int encodeOnce() {
+        EncodedMessage encoded = EncodedMessage.encode(gameState);
+        int bytes = 0;
+        for (NullClientConnection client : clients) {
+            client.sendEncoded(encoded);
+            bytes += client.drain();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,138 @@
+package bench;
+
+import common.FrameDecoder;
+import common.GameSettings;
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import common.ScoreboardEntry;
+import common.WireProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование и разбор сообщений в JSON и бинарном протоколе.
+ * Размеры кадров печатает main, время на операцию - JMH:
+ *
+ *   mvn -Pbench -DskipTests package
+ *   java -cp target/ColorRush-1.0-SNAPSHOT.jar bench.CodecBenchmark
+ *   java -cp target/ColorRush-1.0-SNAPSHOT.jar org.openjdk.jmh.Main CodecBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    // GAME_STATE_N - снимок комнаты из N игроков вместе с полем
+    @Param({"MOVE", "CONNECT", "GAME_STATE_10", "GAME_STATE_50", "GAME_OVER"})
+    public String sample;
+
+    @Param({"JSON", "BINARY"})
+    public WireProtocol protocol;
+
+    private Message message;
+    private byte[] frame;
+    private FrameDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        message = sample(sample);
+        frame = protocol.encode(message);
+        decoder = new FrameDecoder();
+        decoder.setProtocol(protocol);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return protocol.encode(message);
+    }
+
+    // Выделение кадра из потока и разбор, как на стороне получателя
+    @Benchmark
+    public Message decode() {
+        Message[] decoded = new Message[1];
+        decoder.feed(frame, 0, frame.length,
+                (frameProtocol, data, offset, length) -> decoded[0] = frameProtocol.decode(data, offset, length));
+        return decoded[0];
+    }
+
+    static Message sample(String name) {
+        Random random = new Random(42);
+        if (name.startsWith("GAME_STATE_")) {
+            return gameState(random, Integer.parseInt(name.substring("GAME_STATE_".length())));
+        }
+        switch (name) {
+            case "MOVE": {
+                Message move = new Message(MessageTypes.MOVE);
+                move.setX(random.nextDouble() * GameSettings.WORLD_WIDTH);
+                move.setY(random.nextDouble() * GameSettings.WORLD_HEIGHT);
+                return move;
+            }
+            case "CONNECT": {
+                Message connect = new Message(MessageTypes.CONNECT);
+                connect.setPlayerId(1);
+                connect.setPlayerName("Игрок");
+                connect.setProtocol(WireProtocol.BINARY.name());
+                return connect;
+            }
+            case "GAME_OVER": {
+                Message gameOver = new Message(MessageTypes.GAME_OVER);
+                gameOver.setWinner("Игрок3");
+                List<ScoreboardEntry> scores = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    scores.add(new ScoreboardEntry("Игрок" + i, 20 - i));
+                }
+                gameOver.setScores(scores);
+                return gameOver;
+            }
+            default:
+                throw new IllegalArgumentException("Неизвестный образец: " + name);
+        }
+    }
+
+    private static Message gameState(Random random, int playerCount) {
+        Message state = new Message(MessageTypes.GAME_STATE);
+        state.setRound(3);
+        state.setTargetColor(GameSettings.ROUND_COLORS[1]);
+        state.setTimeLeft(4.2);
+        state.setDuration(10.0);
+        state.setGameStarted(true);
+        state.setIsRoundActive(true);
+
+        byte[] field = new byte[GameSettings.GRID_W * GameSettings.GRID_H];
+        for (int i = 0; i < field.length; i++) {
+            field[i] = (byte) random.nextInt(GameSettings.ROUND_COLORS.length);
+        }
+        state.setField(field);
+
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < playerCount; i++) {
+            Player player = new Player("Игрок" + i);
+            player.setId(i + 1);
+            player.setX(random.nextDouble() * GameSettings.WORLD_WIDTH);
+            player.setY(random.nextDouble() * GameSettings.WORLD_HEIGHT);
+            players.add(player);
+        }
+        state.setPlayers(players);
+        return state;
+    }
+
+    // Таблица размеров кадра: байт на сообщение в каждом протоколе
+    public static void main(String[] args) {
+        String[] samples = {"MOVE", "CONNECT", "GAME_STATE_10", "GAME_STATE_50", "GAME_OVER"};
+        System.out.printf("%-15s %10s %10s %8s%n", "сообщение", "JSON", "BINARY", "доля");
+        for (String name : samples) {
+            Message message = sample(name);
+            int json = WireProtocol.JSON.encode(message).length;
+            int binary = WireProtocol.BINARY.encode(message).length;
+            System.out.printf("%-15s %10d %10d %7.1f%%%n", name, json, binary, 100.0 * binary / json);
+        }
+    }
+}
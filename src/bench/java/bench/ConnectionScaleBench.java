@@ -0,0 +1,389 @@
+package bench;
+
+import common.BinaryCodec;
+import common.FrameDecoder;
+import common.GameSettings;
+import common.InputBits;
+import common.Message;
+import common.MessageTypes;
+import common.WireProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Нагрузочный стенд для сравнения режимов сервера (platform / virtual / nio)
+ * по памяти и переключениям контекста при большом числе соединений.
+ *
+ * Сервер запускается отдельным процессом, стенд открывает N соединений и читает
+ * статистику процесса сервера из /proc (только Linux):
+ *
+ *   mvn -Pbench compile
+ *   java -Xms512m -Xmx512m -cp ... server.GameServer --threads=virtual \
+ *        --match-size=10 --max-players-per-room=10 --max-rooms=1100 --queue-capacity=20000 &
+ *   java -cp target/classes bench.ConnectionScaleBench \
+ *        --connections=5000 --mode=active --rate=10 --duration=30 --server-pid=$!
+ *
+ * В режиме idle соединения молчат и не входят в комнату: измеряется стоимость
+ * самих соединений. В режиме active каждое соединение отправляет CONNECT,
+ * попадает через очередь в комнату и с частотой --rate шлет ввод, так что
+ * сервер ведет такты, раунды и рассылку состояния. По умолчанию, как игровой
+ * клиент, соединение договаривается о BINARY и шлет пачки INPUT
+ * (GameSettings.DEFAULT_INPUT_RATE команд в секунду); --protocol=json оставляет
+ * JSON и MOVE с координатами, как у старых клиентов. SNAPSHOT_ACK стенд
+ * не шлет, поэтому сервер рассылает полные снимки, без дельт.
+ * Лимиты комнат на сервере нужно поднять так, чтобы в них поместились
+ * все соединения (см. пример выше).
+ * После GAME_OVER соединение переподключается и снова встает в очередь,
+ * чтобы число игроков в комнатах не падало к концу замера; так же
+ * переподключаются соединения, которые закрыл сервер (счетчик dropped).
+ */
+public class ConnectionScaleBench {
+
+    private String host = "127.0.0.1";
+    private int port = 5556;
+    private int connections = 1000;
+    private boolean active = false;
+    private int rate = 20;
+    private int durationSec = 30;
+    private long serverPid = -1;
+    private WireProtocol protocol = WireProtocol.BINARY;
+
+    // Несколько точек по кругу: игроки двигаются, и снимки состояния не пустые
+    private static final int MOVE_POSITIONS = 16;
+    private final byte[][] moves = new byte[MOVE_POSITIONS][];
+
+    // Направления ввода по квадрату, сторона меняется раз в секунду
+    private static final int[] DIRECTIONS = {InputBits.UP, InputBits.RIGHT, InputBits.DOWN, InputBits.LEFT};
+
+    private int joined;     // ответов CONNECT (вход в комнату)
+    private int gamesOver;  // полученных GAME_OVER
+    private int rejected;   // JOIN_REJECTED: лимиты сервера малы для --connections
+    private int dropped;    // сервер закрыл соединение, например отключил не успевающего читать
+
+    public static void main(String[] args) throws Exception {
+        ConnectionScaleBench bench = new ConnectionScaleBench();
+        for (String arg : args) {
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "host": bench.host = value; break;
+                case "port": bench.port = Integer.parseInt(value); break;
+                case "connections": bench.connections = Integer.parseInt(value); break;
+                case "mode": bench.active = "active".equalsIgnoreCase(value); break;
+                case "rate": bench.rate = Integer.parseInt(value); break;
+                case "duration": bench.durationSec = Integer.parseInt(value); break;
+                case "server-pid": bench.serverPid = Long.parseLong(value); break;
+                case "protocol": bench.protocol = WireProtocol.parse(value); break;
+                default: throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+            }
+        }
+        bench.run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        Selector selector = Selector.open();
+        Connection[] clients = new Connection[connections];
+
+        ProcStats beforeConnect = ProcStats.read(serverPid);
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = open(selector, i);
+        }
+        for (int i = 0; i < MOVE_POSITIONS; i++) {
+            double angle = 2 * Math.PI * i / MOVE_POSITIONS;
+            moves[i] = String.format(Locale.ROOT, "{\"type\":\"MOVE\",\"x\":%.1f,\"y\":%.1f}\n",
+                    400 + 100 * Math.cos(angle), 300 + 100 * Math.sin(angle)).getBytes(StandardCharsets.UTF_8);
+        }
+
+        // Даем серверу создать потоки/сессии, а в режиме active - набрать комнаты
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        long warmupEnd = System.nanoTime() + (active ? 10_000_000_000L : 2_000_000_000L);
+        while (System.nanoTime() < warmupEnd) {
+            poll(selector, clients, readBuffer);
+        }
+        int joinedBeforeStart = joined;
+        ProcStats start = ProcStats.read(serverPid);
+
+        long periodNanos = 1_000_000_000L / Math.max(1, rate);
+        long end = System.nanoTime() + durationSec * 1_000_000_000L;
+        long nextSend = System.nanoTime();
+        long sent = 0;
+        long received = 0;
+        int step = 0;
+        int inputsPerSend = Math.max(1, GameSettings.DEFAULT_INPUT_RATE / Math.max(1, rate));
+
+        while (System.nanoTime() < end) {
+            if (active && System.nanoTime() >= nextSend) {
+                // Номер команды общий для всех соединений: серверу важно только,
+                // что он растет, в том числе после переподключения
+                byte[] input = protocol == WireProtocol.BINARY
+                        ? inputFrame((step + 1) * inputsPerSend, inputsPerSend,
+                                DIRECTIONS[step / Math.max(1, rate) % DIRECTIONS.length])
+                        : null;
+                for (int i = 0; i < clients.length; i++) {
+                    if (!clients[i].channel.isConnected()) {
+                        continue; // переподключение еще не завершилось
+                    }
+                    byte[] frame = input != null ? input : moves[(i + step) % MOVE_POSITIONS];
+                    try {
+                        clients[i].channel.write(ByteBuffer.wrap(frame));
+                        sent++;
+                    } catch (IOException e) {
+                        dropped++;
+                        reconnect(selector, clients, i);
+                    }
+                }
+                step++;
+                nextSend += periodNanos;
+            }
+            received += poll(selector, clients, readBuffer);
+        }
+        ProcStats finish = ProcStats.read(serverPid);
+
+        for (Connection connection : clients) {
+            connection.channel.close();
+        }
+
+        System.out.printf("connections=%d mode=%s protocol=%s rate=%d/s duration=%ds sent=%d received=%.1f MB%n",
+                connections, active ? "active" : "idle", protocol, rate, durationSec, sent, received / 1048576.0);
+        if (active) {
+            System.out.printf("joined: %d before start, %d during run; games over: %d; rejected: %d; dropped: %d%n",
+                    joinedBeforeStart, joined - joinedBeforeStart, gamesOver, rejected, dropped);
+        }
+        if (serverPid > 0) {
+            double seconds = durationSec;
+            long ctx = finish.contextSwitches - start.contextSwitches;
+            System.out.printf("server rss: %.1f MB before, %.1f MB with connections (%.1f KB/conn)%n",
+                    beforeConnect.rssKb / 1024.0, finish.rssKb / 1024.0,
+                    (finish.rssKb - beforeConnect.rssKb) / (double) connections);
+            System.out.printf("server threads: %d before, %d with connections%n",
+                    beforeConnect.threads, finish.threads);
+            System.out.printf("server context switches: %.0f/s (%.2f per conn per s)%n",
+                    ctx / seconds, ctx / seconds / connections);
+            System.out.printf("server cpu: %.1f%%%n",
+                    100.0 * (finish.cpuTicks - start.cpuTicks) / ProcStats.TICKS_PER_SECOND / seconds);
+        }
+    }
+
+    private static byte[] inputFrame(int lastSeq, int count, int direction) {
+        byte[] directions = new byte[count];
+        Arrays.fill(directions, (byte) direction);
+        Message input = new Message(MessageTypes.INPUT);
+        input.setInputSeq(lastSeq);
+        input.setInputs(directions);
+        return BinaryCodec.encode(input);
+    }
+
+    // Первые соединения открываются по одному и с ожиданием, чтобы замер
+    // начинался, когда все они уже приняты сервером
+    private Connection open(Selector selector, int index) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        Connection connection = new Connection(index, channel);
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        sendConnect(connection);
+        return connection;
+    }
+
+    /**
+     * Переподключение без ожидания: пока сервер принимает соединение,
+     * стенд продолжает читать остальные, иначе сервер отключает их как
+     * не успевающих читать. Соединение доделывает poll по OP_CONNECT.
+     * Закрытие канала снимает и его регистрацию в селекторе.
+     */
+    private void reconnect(Selector selector, Connection[] clients, int index) throws IOException {
+        clients[index].channel.close();
+        SocketChannel channel = SocketChannel.open();
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        Connection connection = new Connection(index, channel);
+        clients[index] = connection;
+        if (channel.connect(new InetSocketAddress(host, port))) {
+            channel.register(selector, SelectionKey.OP_READ, connection);
+            sendConnect(connection);
+        } else {
+            channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        }
+    }
+
+    private void sendConnect(Connection connection) throws IOException {
+        if (!active) {
+            return;
+        }
+        // CONNECT всегда в JSON, в нем клиент просит протокол для следующих кадров
+        Message connect = new Message(MessageTypes.CONNECT);
+        connect.setPlayerName("bench-" + connection.index);
+        if (protocol != WireProtocol.JSON) {
+            connect.setProtocol(protocol.name());
+        }
+        connection.channel.write(ByteBuffer.wrap(WireProtocol.JSON.encode(connect)));
+    }
+
+    /**
+     * Прочитать все, что пришло, и переподключить закончивших игру
+     * и отключенных сервером.
+     * Возвращает число прочитанных байт.
+     */
+    private long poll(Selector selector, Connection[] clients, ByteBuffer readBuffer) throws IOException {
+        long bytes = 0;
+        selector.select(5);
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+                continue; // канал уже переподключен в этом проходе
+            }
+            Connection connection = (Connection) key.attachment();
+            int read;
+            try {
+                if (key.isConnectable()) {
+                    connection.channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                    sendConnect(connection);
+                    continue;
+                }
+                readBuffer.clear();
+                read = connection.channel.read(readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read == -1) {
+                if (active) {
+                    dropped++;
+                    reconnect(selector, clients, connection.index);
+                } else {
+                    key.cancel();
+                }
+                continue;
+            }
+            bytes += read;
+            if (!active) {
+                continue;
+            }
+            readBuffer.flip();
+            connection.decoder.feed(readBuffer, connection);
+            if (connection.gameOver) {
+                // Повторный CONNECT на том же соединении сервер игнорирует
+                gamesOver++;
+                reconnect(selector, clients, connection.index);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Соединение стенда. Из входящих кадров смотрит только тип: целиком
+     * сообщения не разбираются, чтобы стенд не отнимал процессор у сервера.
+     */
+    private class Connection implements FrameDecoder.FrameHandler {
+        final int index;
+        final SocketChannel channel;
+        final FrameDecoder decoder = new FrameDecoder();
+        boolean gameOver;
+
+        Connection(int index, SocketChannel channel) {
+            this.index = index;
+            this.channel = channel;
+        }
+
+        @Override
+        public void onFrame(WireProtocol frameProtocol, byte[] data, int offset, int length) {
+            String type = frameProtocol == WireProtocol.BINARY
+                    ? MessageTypes.typeOf(data[offset] & 0xFF)
+                    : jsonType(data, offset, length);
+            if (MessageTypes.CONNECT.equals(type)) {
+                // Ответ на CONNECT приходит в JSON, дальше сервер пишет выбранным протоколом
+                joined++;
+                decoder.setProtocol(protocol);
+            } else if (MessageTypes.JOIN_REJECTED.equals(type)) {
+                rejected++;
+            } else if (MessageTypes.GAME_OVER.equals(type)) {
+                gameOver = true;
+            }
+        }
+    }
+
+    private static final String[] WATCHED_TYPES = {
+            MessageTypes.CONNECT, MessageTypes.JOIN_REJECTED, MessageTypes.GAME_OVER};
+    private static final byte[][] WATCHED_PREFIXES = new byte[WATCHED_TYPES.length][];
+
+    static {
+        for (int i = 0; i < WATCHED_TYPES.length; i++) {
+            WATCHED_PREFIXES[i] = ("{\"type\":\"" + WATCHED_TYPES[i] + "\"").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // Gson пишет type первым полем, поэтому хватает сравнить начало строки
+    private static String jsonType(byte[] data, int offset, int length) {
+        for (int i = 0; i < WATCHED_PREFIXES.length; i++) {
+            byte[] prefix = WATCHED_PREFIXES[i];
+            if (length >= prefix.length
+                    && Arrays.equals(data, offset, offset + prefix.length, prefix, 0, prefix.length)) {
+                return WATCHED_TYPES[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Снимок статистики процесса из /proc/PID.
+     */
+    private static class ProcStats {
+        static final int TICKS_PER_SECOND = 100; // USER_HZ на Linux
+
+        long rssKb;
+        int threads;
+        long contextSwitches;
+        long cpuTicks;
+
+        static ProcStats read(long pid) throws IOException {
+            ProcStats stats = new ProcStats();
+            if (pid <= 0) {
+                return stats;
+            }
+            Path proc = Path.of("/proc", Long.toString(pid));
+            for (String line : Files.readAllLines(proc.resolve("status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    stats.rssKb = Long.parseLong(line.replaceAll("\\D", ""));
+                } else if (line.startsWith("Threads:")) {
+                    stats.threads = Integer.parseInt(line.replaceAll("\\D", ""));
+                }
+            }
+
+            // Переключения контекста считаются по каждому потоку отдельно
+            try (DirectoryStream<Path> tasks = Files.newDirectoryStream(proc.resolve("task"))) {
+                for (Path task : tasks) {
+                    try {
+                        for (String line : Files.readAllLines(task.resolve("status"))) {
+                            if (line.startsWith("voluntary_ctxt_switches:")
+                                    || line.startsWith("nonvoluntary_ctxt_switches:")) {
+                                stats.contextSwitches += Long.parseLong(line.replaceAll("\\D", ""));
+                            }
+                        }
+                    } catch (IOException ignored) {
+                        // поток завершился между листингом и чтением
+                    }
+                }
+            }
+
+            String stat = Files.readString(proc.resolve("stat"));
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            stats.cpuTicks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]); // utime + stime
+            return stats;
+        }
+    }
+}
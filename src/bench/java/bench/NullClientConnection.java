@@ -0,0 +1,32 @@
+package bench;
+
+import server.ClientConnection;
+import server.ServerConfig;
+
+/**
+ * Соединение без транспорта: кадры остаются в очереди, бенчмарк вычерпывает их сам.
+ */
+class NullClientConnection extends ClientConnection {
+
+    NullClientConnection(ServerConfig config) {
+        super(null, config, null);
+    }
+
+    // Имитирует писателя: забирает все, что накопилось
+    int drain() {
+        int bytes = 0;
+        byte[] frame;
+        while ((frame = outbound.poll()) != null) {
+            bytes += frame.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    protected void onOutboundReady() {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+}
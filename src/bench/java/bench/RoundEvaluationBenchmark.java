@@ -0,0 +1,117 @@
+package bench;
+
+import common.GameSettings;
+import common.Player;
+import org.openjdk.jmh.annotations.*;
+import server.PlayerTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость итога раунда (кто стоит на нужном цвете) в зависимости от размера комнаты:
+ * объекты Player в ConcurrentHashMap со сравнением строк цвета против
+ * параллельных массивов PlayerTable со сравнением индексов, последовательно и в fork/join.
+ * Выбывшие после каждого вызова оживляются, чтобы следующий вызов делал ту же работу.
+ *
+ *   mvn -Pbench -DskipTests package
+ *   java -cp target/ColorRush-1.0-SNAPSHOT.jar org.openjdk.jmh.Main RoundEvaluationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundEvaluationBenchmark {
+
+    @Param({"16", "1000", "10000", "50000"})
+    public int roomSize;
+
+    private byte[] field;
+    private int targetColor;
+    private String targetColorName;
+    private Map<String, Player> playerMap;
+    private PlayerTable sequentialTable;
+    private PlayerTable parallelTable;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        field = new byte[GameSettings.GRID_W * GameSettings.GRID_H];
+        for (int i = 0; i < field.length; i++) {
+            field[i] = (byte) random.nextInt(GameSettings.ROUND_COLORS.length);
+        }
+        targetColor = 2;
+        targetColorName = GameSettings.ROUND_COLORS[targetColor];
+
+        playerMap = new ConcurrentHashMap<>();
+        sequentialTable = new PlayerTable(roomSize, Integer.MAX_VALUE);
+        parallelTable = new PlayerTable(roomSize, 1);
+        for (int i = 0; i < roomSize; i++) {
+            double x = random.nextDouble() * GameSettings.WORLD_WIDTH;
+            double y = random.nextDouble() * GameSettings.WORLD_HEIGHT;
+            Player player = new Player("Игрок" + i);
+            player.setX(x);
+            player.setY(y);
+            playerMap.put(String.valueOf(i), player);
+            sequentialTable.add(player.getName(), x, y);
+            parallelTable.add(player.getName(), x, y);
+        }
+    }
+
+    // Как было: обход значений карты, цвет клетки строкой, списки выживших и выбывших
+    @Benchmark
+    public int mapOfObjects() {
+        List<Player> survivors = new ArrayList<>();
+        List<Player> eliminated = new ArrayList<>();
+        for (Player player : playerMap.values()) {
+            if (player.isAlive()) {
+                if (spotColorAt(player.getX(), player.getY()).equals(targetColorName)) {
+                    survivors.add(player);
+                } else {
+                    player.setAlive(false);
+                    eliminated.add(player);
+                }
+            }
+        }
+        for (Player player : eliminated) {
+            player.setAlive(true);
+        }
+        return survivors.size();
+    }
+
+    // Как стало: массивы по слотам в потоке комнаты
+    @Benchmark
+    public int structOfArrays() {
+        return evaluate(sequentialTable);
+    }
+
+    // Как стало в большой комнате: те же массивы, диапазоны слотов в ForkJoinPool
+    @Benchmark
+    public int structOfArraysForkJoin() {
+        return evaluate(parallelTable);
+    }
+
+    private int evaluate(PlayerTable table) {
+        int survivors = table.evaluateRound(field, targetColor);
+        for (int slot = 1; slot < table.getSlotCount(); slot++) {
+            if (table.isEliminated(slot)) {
+                table.setAlive(slot, true);
+            }
+        }
+        return survivors;
+    }
+
+    private String spotColorAt(double x, double y) {
+        int gx = (int) (x / GameSettings.CELL_SIZE);
+        int gy = (int) (y / GameSettings.CELL_SIZE);
+        gx = Math.max(0, Math.min(gx, GameSettings.GRID_W - 1));
+        gy = Math.max(0, Math.min(gy, GameSettings.GRID_H - 1));
+        return GameSettings.ROUND_COLORS[field[gy * GameSettings.GRID_W + gx]];
+    }
+}
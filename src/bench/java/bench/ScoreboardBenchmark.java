@@ -0,0 +1,205 @@
+package bench;
+
+import common.ScoreboardEntry;
+import org.openjdk.jmh.annotations.*;
+import server.db.LeaderboardCache;
+import server.db.ScoreboardRepository;
+import server.db.ScoreboardWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сколько вызовов таблицы рекордов в секунду выдерживает сервер: прежняя схема
+ * (новое соединение и новый запрос на каждый вызов, журнал по умолчанию)
+ * против ScoreboardRepository с постоянным соединением в WAL и готовым запросом.
+ * topPrepared - тот же ТОП готовым запросом на постоянном соединении
+ * (на сервере ТОП больше не читается из базы, см. LeaderboardCache).
+ * topCache, pageCache - страницы из LeaderboardCache, без запроса.
+ * rank* - место игрока: COUNT(*) по таблице против суммы в дереве Фенвика.
+ * gameOver* - то, что конец игры на 30 игроков стоит потоку комнаты:
+ * 30 синхронных транзакций против 30 постановок в очередь ScoreboardWriter.
+ * У каждой схемы свой временный файл (режим WAL запоминается в файле),
+ * заполненный 10000 игроков, как после долгой работы.
+ *
+ *   mvn -Pbench -DskipTests package
+ *   java -cp target/ColorRush-1.0-SNAPSHOT.jar org.openjdk.jmh.Main ScoreboardBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoreboardBenchmark {
+
+    private static final int PLAYERS = 10_000;
+    private static final int GAME_OVER_PLAYERS = 30;
+
+    private File legacyFile;
+    private File file;
+    private String legacyUrl;
+
+    private ScoreboardRepository repository;
+    private LeaderboardCache leaderboard;
+    private Connection queryConnection;
+    private PreparedStatement topQuery;
+    private PreparedStatement rankQuery;
+    private ScoreboardWriter writer;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        legacyFile = File.createTempFile("scoreboard-legacy", ".db");
+        legacyUrl = "jdbc:sqlite:" + legacyFile.getAbsolutePath();
+        try (Connection conn = DriverManager.getConnection(legacyUrl);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE scoreboard (player_name TEXT PRIMARY KEY, score INTEGER NOT NULL)");
+        }
+        fill(legacyUrl);
+
+        file = File.createTempFile("scoreboard-bench", ".db");
+        repository = new ScoreboardRepository("jdbc:sqlite:" + file.getAbsolutePath());
+        fill("jdbc:sqlite:" + file.getAbsolutePath());
+        leaderboard = new LeaderboardCache(repository);
+        queryConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        topQuery = queryConnection.prepareStatement(
+                "SELECT player_name, score FROM scoreboard ORDER BY score DESC LIMIT ?");
+        rankQuery = queryConnection.prepareStatement(
+                "SELECT COUNT(*) + 1 FROM scoreboard WHERE score > (SELECT score FROM scoreboard WHERE player_name = ?)");
+        writer = new ScoreboardWriter(repository, leaderboard);
+    }
+
+    private static void fill(String url) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url);
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO scoreboard (player_name, score) VALUES (?, ?)")) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < PLAYERS; i++) {
+                ps.setString(1, "Игрок" + i);
+                ps.setInt(2, 5 + i % 500);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        queryConnection.close();
+        writer.close();
+        repository.close();
+        legacyFile.delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        file.delete();
+    }
+
+    // Каждый вызов действительно пишет: результат растет
+    private int nextScore() {
+        return 1000 + next++;
+    }
+
+    private String nextName() {
+        return "Игрок" + (next % PLAYERS);
+    }
+
+    @Benchmark
+    public void updatePerCallConnection() throws SQLException {
+        String name = nextName();
+        int score = nextScore();
+        try (Connection conn = DriverManager.getConnection(legacyUrl);
+             PreparedStatement ps = conn.prepareStatement("""
+                     INSERT INTO scoreboard (player_name, score)
+                     VALUES (?, ?)
+                     ON CONFLICT(player_name)
+                     DO UPDATE SET score = excluded.score
+                     WHERE excluded.score > scoreboard.score
+                     """)) {
+            ps.setString(1, name);
+            ps.setInt(2, score);
+            ps.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public void updateRepository() {
+        repository.updateIfBetter(nextName(), nextScore());
+    }
+
+    @Benchmark
+    public List<ScoreboardEntry> topPerCallConnection() throws SQLException {
+        List<ScoreboardEntry> result = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(legacyUrl);
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT player_name, score FROM scoreboard ORDER BY score DESC LIMIT ?")) {
+            ps.setInt(1, 10);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new ScoreboardEntry(rs.getString("player_name"), rs.getInt("score")));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<ScoreboardEntry> topPrepared() throws SQLException {
+        List<ScoreboardEntry> result = new ArrayList<>();
+        topQuery.setInt(1, 10);
+        try (ResultSet rs = topQuery.executeQuery()) {
+            while (rs.next()) {
+                result.add(new ScoreboardEntry(rs.getString("player_name"), rs.getInt("score")));
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<ScoreboardEntry> topCache() {
+        return leaderboard.getPage(0, 10);
+    }
+
+    // Середина таблицы: страница попадает в большую группу одинаковых результатов
+    @Benchmark
+    public List<ScoreboardEntry> pageCache() {
+        return leaderboard.getPage(PLAYERS / 2, 10);
+    }
+
+    @Benchmark
+    public int rankSql() throws SQLException {
+        rankQuery.setString(1, nextName());
+        next++;
+        try (ResultSet rs = rankQuery.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Benchmark
+    public int rankCache() {
+        String name = nextName();
+        next++;
+        return leaderboard.getRank(name);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAME_OVER_PLAYERS)
+    public void gameOverRepository() {
+        for (int i = 0; i < GAME_OVER_PLAYERS; i++) {
+            repository.updateIfBetter(nextName(), nextScore());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAME_OVER_PLAYERS)
+    public void gameOverWriter() {
+        for (int i = 0; i < GAME_OVER_PLAYERS; i++) {
+            writer.submit(nextName(), nextScore());
+        }
+    }
+}
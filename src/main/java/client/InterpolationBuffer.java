@@ -0,0 +1,128 @@
+package client;
+
+import common.Player;
+
+import java.util.Arrays;
+
+/**
+ * Recent timestamped positions of remote players.
+ * Remote players are drawn slightly in the past, between the two snapshots around
+ * the render time, so they move smoothly even though snapshots arrive only 10-20 times
+ * a second and not exactly on schedule.
+ */
+public class InterpolationBuffer {
+    private static final int CAPACITY = 16;
+    // Render this many snapshot intervals behind, so one late or lost snapshot still has a successor
+    private static final double DELAY_INTERVALS = 2.0;
+    private static final long MIN_DELAY_NANOS = 50_000_000L;
+    private static final long MAX_DELAY_NANOS = 300_000_000L;
+    // Jumps longer than this are teleports and are not interpolated
+    private static final double TELEPORT_DISTANCE = 100;
+
+    private static final class Track {
+        final long[] times = new long[CAPACITY];
+        final double[] xs = new double[CAPACITY];
+        final double[] ys = new double[CAPACITY];
+        int newest = -1;
+        int size = 0;
+        long lastSeen; // receivedAt of the last snapshot that had this player
+
+        void add(long time, double x, double y) {
+            newest = (newest + 1) % CAPACITY;
+            times[newest] = time;
+            xs[newest] = x;
+            ys[newest] = y;
+            size = Math.min(size + 1, CAPACITY);
+        }
+
+        // i = 0 is the newest sample
+        int index(int i) {
+            return (newest - i + CAPACITY) % CAPACITY;
+        }
+    }
+
+    // Indexed by player slot: the server hands out small dense ids, so the table
+    // only grows to the largest slot seen
+    private Track[] tracks = new Track[64];
+    private long lastSnapshotAt = 0;
+    private double averageInterval = 50_000_000; // nanos, smoothed
+
+    /**
+     * Record the positions from one snapshot. Players missing from it are forgotten.
+     */
+    public void add(long receivedAt, Iterable<Player> players) {
+        if (lastSnapshotAt != 0 && receivedAt > lastSnapshotAt) {
+            averageInterval += ((receivedAt - lastSnapshotAt) - averageInterval) * 0.1;
+        }
+        lastSnapshotAt = receivedAt;
+
+        for (Player player : players) {
+            if (player.getId() >= tracks.length) {
+                tracks = Arrays.copyOf(tracks, Math.max(player.getId() + 1, tracks.length * 2));
+            }
+            Track track = tracks[player.getId()];
+            if (track == null) {
+                track = new Track();
+                tracks[player.getId()] = track;
+            }
+            track.add(receivedAt, player.getX(), player.getY());
+            track.lastSeen = receivedAt;
+        }
+        for (int slot = 0; slot < tracks.length; slot++) {
+            if (tracks[slot] != null && tracks[slot].lastSeen != receivedAt) {
+                tracks[slot] = null;
+            }
+        }
+    }
+
+    /**
+     * The time remote players should be drawn at.
+     */
+    public long renderTime(long now) {
+        long delay = (long) (averageInterval * DELAY_INTERVALS);
+        return now - Math.max(MIN_DELAY_NANOS, Math.min(MAX_DELAY_NANOS, delay));
+    }
+
+    /**
+     * Position of the player at the given time, written to out[0] and out[1].
+     * Holds the newest known position instead of extrapolating past it.
+     */
+    public boolean sample(int playerId, long time, double[] out) {
+        Track track = playerId >= 0 && playerId < tracks.length ? tracks[playerId] : null;
+        if (track == null || track.size == 0) {
+            return false;
+        }
+
+        for (int i = 0; i < track.size - 1; i++) {
+            int to = track.index(i);
+            int from = track.index(i + 1);
+            if (track.times[from] > time) {
+                continue;
+            }
+            if (time >= track.times[to]) {
+                break; // newer than everything we have
+            }
+            double dx = track.xs[to] - track.xs[from];
+            double dy = track.ys[to] - track.ys[from];
+            if (dx * dx + dy * dy > TELEPORT_DISTANCE * TELEPORT_DISTANCE) {
+                out[0] = track.xs[from];
+                out[1] = track.ys[from];
+                return true;
+            }
+            double alpha = (double) (time - track.times[from]) / (track.times[to] - track.times[from]);
+            out[0] = track.xs[from] + dx * alpha;
+            out[1] = track.ys[from] + dy * alpha;
+            return true;
+        }
+
+        int sample = track.times[track.index(0)] <= time ? track.index(0) : track.index(track.size - 1);
+        out[0] = track.xs[sample];
+        out[1] = track.ys[sample];
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(tracks, null);
+        lastSnapshotAt = 0;
+    }
+}
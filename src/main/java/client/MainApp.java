@@ -55,10 +55,21 @@ public class MainApp extends Application {
             switch (message.getType()) {
                 case MessageTypes.CONNECT:
                     showGameScreen(message.getPlayerId());
+                    if (message.isSpectator() && gameController != null) {
+                        // Зрителю компас не нужен: своего игрока у него нет
+                        gameController.setShowCompass(false);
+                        gameController.setSpectating(true);
+                    }
                     break;
                 case MessageTypes.JOIN_REJECTED:
                     handleJoinRejected(message);
                     break;
+                case MessageTypes.QUEUE_STATUS:
+                    // Пока идет подбор, остаемся на экране подключения
+                    if (connectionController != null) {
+                        connectionController.showQueueStatus(message);
+                    }
+                    break;
                 case MessageTypes.GAME_STATE:
                     handleGameState(message);
                     break;
@@ -74,6 +85,16 @@ public class MainApp extends Application {
                 case MessageTypes.PLAYER_ELIMINATED:
                     handlePlayerEliminated(message);
                     break;
+                case MessageTypes.LEADERBOARD:
+                    if (gameOverController != null) {
+                        gameOverController.showLeaderboardPage(message);
+                    }
+                    break;
+                case MessageTypes.RANK:
+                    if (gameOverController != null) {
+                        gameOverController.showRank(message);
+                    }
+                    break;
             }
         });
     }
@@ -83,8 +104,8 @@ public class MainApp extends Application {
         Platform.runLater(() -> {
             Alert alert = new Alert(Alert.AlertType.WARNING);
             alert.setTitle("Невозможно подключиться");
-            alert.setHeaderText("Игра уже началась");
-            alert.setContentText(reason != null ? reason : "В этой комнате уже идет игра. Пожалуйста, выберите другую комнату.");
+            alert.setHeaderText("Сервер не принял подключение");
+            alert.setContentText(reason != null ? reason : "Попробуйте подключиться позже.");
             alert.showAndWait();
 
             // Закрываем соединение и возвращаемся на экран подключения
@@ -96,19 +117,19 @@ public class MainApp extends Application {
     }
     private void handlePlayerEliminated(Message message) {
         Platform.runLater(() -> {
+            // Выбывший остается смотреть матч; итоги покажет GAME_OVER
+            if (gameController != null && networkService.isConnected()) {
+                networkService.sendSpectate();
+                gameController.setSpectating(true);
+                return;
+            }
+
             // Показываем экран окончания игры с надписью "Вы проиграли"
             if (message.getWinner() == null || message.getWinner().isEmpty()) {
                 message.setWinner("Вы проиграли!");
             }
+            // Соединение закроется при возврате в меню: до тех пор экран листает таблицу рекордов
             showGameOverScreen(message);
-
-            // Автоматически закрываем соединение после показа экрана
-            new Thread(() -> {
-                try {
-                    Thread.sleep(5000); // 5 секунд на экране
-                } catch (InterruptedException ignored) {}
-                networkService.disconnect();
-            }).start();
         });
     }
 
@@ -126,7 +147,10 @@ public class MainApp extends Application {
     private void handleMatchStart(Message message) {
         // Если мы не в игре - показываем игровой экран
         if (gameController == null) {
-            showGameScreen(null);
+            showGameScreen(0);
+        }
+        if (gameController != null) {
+            gameController.updateField(message);
         }
     }
 
@@ -136,7 +160,7 @@ public class MainApp extends Application {
             gameController.handleRoundStart(message);
         } else {
             // Иначе показываем игровой экран и затем обрабатываем сообщение
-            showGameScreen(null);
+            showGameScreen(0);
             if (gameController != null) {
                 gameController.handleRoundStart(message);
             }
@@ -159,6 +183,7 @@ public class MainApp extends Application {
 
             connectionController = loader.getController();
             connectionController.setMainApp(this);
+            gameOverController = null;
             connectionController.setNetworkService(networkService);
 
             // Создаем новую сцену с ПРАВИЛЬНЫМИ ПАРАМЕТРАМИ
@@ -189,7 +214,8 @@ public class MainApp extends Application {
         }
     }
 
-    public void showGameScreen(String playerId) {
+    // playerId - слот своего игрока, 0 у зрителя
+    public void showGameScreen(int playerId) {
         try {
             // Загружаем FXML и получаем контроллер
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/client/views/game_screen.fxml"));
@@ -246,6 +272,7 @@ public class MainApp extends Application {
 
             gameOverController = loader.getController();
             gameOverController.setMainApp(this);
+            gameOverController.setNetworkService(networkService);
             gameOverController.setMessageData(message);
 
             // Создаем новую сцену
@@ -265,22 +292,8 @@ public class MainApp extends Application {
             gameStarted = false;
             System.out.println("[APP] Показан экран окончания игры");
 
-            // Автоматический возврат к экрану подключения через 5 секунд
-            new Thread(() -> {
-                if (networkService != null) {
-                    networkService.disconnect();
-                }
-
-                try {
-                    Thread.sleep(5000); // 5 секунд на экране окончания
-                } catch (InterruptedException ignored) {}
-
-                Platform.runLater(() -> {
-                    if (!isClosing) {
-                        showConnectionScreen();
-                    }
-                });
-            }).start();
+            // Соединение остается открытым, пока экран показан: по нему запрашивается
+            // таблица рекордов; закрывается при возврате в главное меню
         } catch (IOException e) {
             e.printStackTrace();
             System.err.println("Ошибка загрузки FXML для экрана окончания игры");
@@ -1,15 +1,24 @@
 package client;
 
+import common.DatagramCodec;
+import common.FrameDecoder;
+import common.GameSettings;
 import common.Message;
 import common.MessageTypes;
+import common.WireProtocol;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class NetworkService {
     private Socket socket;
@@ -19,22 +28,146 @@ public class NetworkService {
     private OutputStream outputStream;
     private InputStream inputStream;
 
-    private String playerId;
+    private int playerId; // our slot in the room, 0 until the server assigns one
+
+    // Protocol we ask the server for; until it confirms, everything stays JSON
+    private final WireProtocol preferredProtocol = WireProtocol.BINARY;
+    private volatile WireProtocol protocol = WireProtocol.JSON;
+    // Between our CONNECT and the server's reply the server may already expect the new protocol
+    private volatile boolean handshakePending = false;
+    private final SnapshotAssembler snapshots = new SnapshotAssembler();
+    private int lastSnapshotSeq = 0; // snapshots can arrive over both TCP and UDP, drop the stale ones
+
+    // Optional UDP path for MOVE, acks and snapshots; off with -Dcolorrush.udp=false
+    private static final boolean UDP_ENABLED = !"false".equals(System.getProperty("colorrush.udp"));
+    private String host;
+    private volatile DatagramChannel udpChannel;
+    private long udpToken;
+    private int udpOutSeq = 0;
+
+    // Input commands: sampled at the server's input rate, the last few are repeated in every packet
+    private static final int INPUT_REDUNDANCY = 4;
+    // Also the prediction window: inputs older than this can no longer be replayed
+    private static final int INPUT_HISTORY = 128;
+    private volatile int inputRate = GameSettings.DEFAULT_INPUT_RATE;
+    private volatile boolean inputSupported = false; // older servers only understand MOVE
+    private final byte[] inputHistory = new byte[INPUT_HISTORY];
+    private int inputSeq = 0;
+    private int unsentInputs = 0;
 
     public NetworkService(Consumer<Message> messageHandler) {
         this.messageHandler = messageHandler;
     }
 
     public void sendMove(double x, double y) {
-        if (!connected) return;
+        if (!connected || handshakePending) return;
 
         try {
             Message msg = new Message(MessageTypes.MOVE);
             msg.setX(x);
             msg.setY(y);
 
-            String json = msg.toJson();
-            sendRawMessage(json);
+            sendUnreliable(msg);
+        } catch (Exception e) {
+            handleConnectionError(e);
+        }
+    }
+
+    // Record one input command; it goes out with the next flushInputs()
+    public synchronized int addInput(int bits) {
+        inputSeq++;
+        inputHistory[inputSeq % INPUT_HISTORY] = (byte) bits;
+        unsentInputs = Math.min(unsentInputs + 1, INPUT_HISTORY);
+        return inputSeq;
+    }
+
+    // Send every input added since the last flush plus a few older ones in case a packet was lost
+    public void flushInputs() {
+        Message msg;
+        synchronized (this) {
+            if (unsentInputs == 0) return;
+            int count = Math.min(inputSeq, Math.max(unsentInputs, INPUT_REDUNDANCY));
+            byte[] batch = new byte[count];
+            for (int i = 0; i < count; i++) {
+                batch[i] = inputHistory[(inputSeq - count + 1 + i) % INPUT_HISTORY];
+            }
+            unsentInputs = 0;
+
+            msg = new Message(MessageTypes.INPUT);
+            msg.setInputSeq(inputSeq);
+            msg.setInputs(batch);
+        }
+        if (!connected || handshakePending) return;
+
+        try {
+            sendUnreliable(msg);
+        } catch (Exception e) {
+            handleConnectionError(e);
+        }
+    }
+
+    // Re-apply every input after afterSeq, oldest first.
+    // Returns false if some of them already fell out of the history
+    public synchronized boolean replayInputs(int afterSeq, IntConsumer step) {
+        if (inputSeq - afterSeq > INPUT_HISTORY) {
+            return false;
+        }
+        for (int seq = afterSeq + 1; seq <= inputSeq; seq++) {
+            step.accept(inputHistory[seq % INPUT_HISTORY]);
+        }
+        return true;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public boolean isInputSupported() {
+        return inputSupported;
+    }
+
+    // Ask the server for a full state including the field
+    public void sendResync() {
+        if (!connected || handshakePending) return;
+
+        try {
+            sendRawMessage(new Message(MessageTypes.RESYNC));
+        } catch (Exception e) {
+            handleConnectionError(e);
+        }
+    }
+
+    // After elimination: keep watching the match instead of leaving
+    public void sendSpectate() {
+        if (!connected || handshakePending) return;
+
+        try {
+            sendRawMessage(new Message(MessageTypes.SPECTATE));
+        } catch (Exception e) {
+            handleConnectionError(e);
+        }
+    }
+
+    // Game-over screen: one page of the leaderboard, best first
+    public void sendLeaderboardRequest(int offset, int size) {
+        if (!connected || handshakePending) return;
+
+        try {
+            Message msg = new Message(MessageTypes.LEADERBOARD_REQUEST);
+            msg.setPageOffset(offset);
+            msg.setPageSize(size);
+            sendRawMessage(msg);
+        } catch (Exception e) {
+            handleConnectionError(e);
+        }
+    }
+
+    // Game-over screen: our own place in the leaderboard
+    public void sendRankRequest() {
+        if (!connected || handshakePending) return;
+
+        try {
+            sendRawMessage(new Message(MessageTypes.RANK_REQUEST));
         } catch (Exception e) {
             handleConnectionError(e);
         }
@@ -44,12 +177,17 @@ public class NetworkService {
         System.out.println("[CLIENT]1 Attempting to connect to " + host + ":" + port);
         try {
             socket = new Socket(host, port);
+            this.host = host;
             System.out.println("[CLIENT]2 Successfully connected to server");
 
             // Use raw streams without wrappers
             outputStream = socket.getOutputStream();
             inputStream = socket.getInputStream();
             connected = true;
+            protocol = WireProtocol.JSON;
+            handshakePending = false;
+            snapshots.reset();
+            lastSnapshotSeq = 0;
 
             System.out.println("[CLIENT]3 I/O streams created");
 
@@ -74,7 +212,7 @@ public class NetworkService {
                 Message msg = new Message(MessageTypes.DISCONNECT);
                 msg.setPlayerId(playerId);
 
-                sendRawMessage(msg.toJson());
+                sendRawMessage(msg);
             }
 
             connected = false;
@@ -85,73 +223,204 @@ public class NetworkService {
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
+            closeUdp();
         } catch (IOException e) {
             System.err.println("Error during disconnect: " + e.getMessage());
         }
     }
 
     public void sendConnect(String playerName) {
+        sendConnect(playerName, false);
+    }
+
+    // A spectator only watches a running match: no seat, no input
+    public void sendConnect(String playerName, boolean spectator) {
         if (!connected) return;
         try {
             Message msg = new Message(MessageTypes.CONNECT);
             msg.setPlayerName(playerName);
+            msg.setProtocol(preferredProtocol.name());
+            msg.setSpectator(spectator);
 
-            String json = msg.toJson();
-            sendRawMessage(json);
+            handshakePending = true;
+            sendRawMessage(msg);
 
         } catch (Exception e) {
             handleConnectionError(e);
         }
     }
 
-    private void sendRawMessage(String message) throws IOException {
-        // Add newline delimiter for proper reading on the server side
-        String messageWithNewline = message + "\n";
-        byte[] bytes = messageWithNewline.getBytes(StandardCharsets.UTF_8);
-        outputStream.write(bytes);
+    private synchronized void sendRawMessage(Message message) throws IOException {
+        // JSON frames end with a newline, binary frames carry a length prefix
+        outputStream.write(protocol.encode(message));
         outputStream.flush();
     }
 
-    private void receiveMessages() {
-        byte[] buffer = new byte[4096];
-        StringBuilder currentMessage = new StringBuilder();
+    // MOVE and acks go over UDP when the server offered it; losing one is harmless
+    private void sendUnreliable(Message message) throws IOException {
+        DatagramChannel channel = udpChannel;
+        if (channel == null) {
+            sendRawMessage(message);
+            return;
+        }
+        synchronized (channel) {
+            ByteBuffer datagram = DatagramCodec.encode(udpToken, ++udpOutSeq, WireProtocol.BINARY.encode(message));
+            if (datagram == null) {
+                sendRawMessage(message);
+                return;
+            }
+            channel.write(datagram);
+        }
+    }
 
+    private void openUdp(int port, long token) {
         try {
-            int bytesRead;
-            while (connected && (bytesRead = inputStream.read(buffer)) != -1) {
-                String received = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
+            DatagramChannel channel = DatagramChannel.open();
+            channel.connect(new InetSocketAddress(host, port));
+            udpToken = token;
+            udpOutSeq = 0;
+            udpChannel = channel;
+
+            Thread udpThread = new Thread(() -> receiveDatagrams(channel), "udp-receive");
+            udpThread.setDaemon(true);
+            udpThread.start();
+            System.out.println("[CLIENT][DEBUG] UDP enabled, server port " + port);
+        } catch (IOException e) {
+            // Everything keeps working over TCP
+            System.err.println("[CLIENT][WARN] UDP unavailable: " + e.getMessage());
+        }
+    }
 
-                currentMessage.append(received);
+    private void closeUdp() {
+        DatagramChannel channel = udpChannel;
+        udpChannel = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing UDP channel: " + e.getMessage());
+            }
+        }
+    }
 
-                // Process messages separated by newline
-                while (currentMessage.indexOf("\n") != -1) {
-                    int endIndex = currentMessage.indexOf("\n");
-                    String json = currentMessage.substring(0, endIndex).trim();
-                    currentMessage.delete(0, endIndex + 1);
+    private void receiveDatagrams(DatagramChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocate(DatagramCodec.MAX_DATAGRAM_SIZE);
+        int lastSeq = 0;
+        try {
+            while (connected && channel.isOpen()) {
+                buffer.clear();
+                channel.read(buffer);
+                buffer.flip();
+                if (buffer.remaining() <= DatagramCodec.HEADER_SIZE || DatagramCodec.token(buffer) != udpToken) {
+                    continue;
+                }
+                // Late or duplicated datagrams are dropped
+                int seq = DatagramCodec.seq(buffer);
+                if (lastSeq != 0 && !DatagramCodec.isNewer(seq, lastSeq)) {
+                    continue;
+                }
+                lastSeq = seq;
+
+                Message message;
+                try {
+                    message = DatagramCodec.decode(buffer);
+                } catch (Exception e) {
+                    System.err.println("[CLIENT][ERROR] Bad datagram: " + e.getMessage());
+                    continue;
+                }
+                if (MessageTypes.GAME_STATE.equals(message.getType()) && acceptSnapshot(message)) {
+                    Platform.runLater(() -> messageHandler.accept(message));
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // disconnect() closed the channel
+        } catch (IOException e) {
+            // ICMP port unreachable and the like: fall back to TCP for the rest of the session
+            System.err.println("[CLIENT][WARN] UDP receive failed, falling back to TCP: " + e.getMessage());
+            closeUdp();
+        }
+    }
 
-                    if (!json.isEmpty()) {
+    private void receiveMessages() {
+        byte[] buffer = new byte[4096];
+        FrameDecoder decoder = new FrameDecoder();
 
-                        try {
-                            Message message = Message.fromJson(json);
-                            Platform.runLater(() -> messageHandler.accept(message));
-                        } catch (Exception e) {
-                            System.err.println("[CLIENT][ERROR] Parsing error: " + e.getMessage());
-                            System.err.println("[CLIENT][DEBUG] Invalid JSON: " + json);
-                            e.printStackTrace();
+        try {
+            int bytesRead;
+            while (connected && (bytesRead = inputStream.read(buffer)) != -1) {
+                decoder.feed(buffer, 0, bytesRead, (frameProtocol, data, offset, length) -> {
+                    Message message;
+                    try {
+                        message = frameProtocol.decode(data, offset, length);
+                    } catch (Exception e) {
+                        System.err.println("[CLIENT][ERROR] Parsing error: " + e.getMessage());
+                        if (frameProtocol == WireProtocol.JSON) {
+                            System.err.println("[CLIENT][DEBUG] Invalid JSON: " +
+                                    new String(data, offset, length, StandardCharsets.UTF_8));
                         }
+                        e.printStackTrace();
+                        return;
                     }
-                }
+                    if (message == null) {
+                        return;
+                    }
+                    if (MessageTypes.GAME_STATE.equals(message.getType()) && !acceptSnapshot(message)) {
+                        return;
+                    }
+                    if (MessageTypes.CONNECT.equals(message.getType())) {
+                        // The server answers CONNECT in JSON and switches right after it
+                        WireProtocol negotiated = WireProtocol.parse(message.getProtocol());
+                        decoder.setProtocol(negotiated);
+                        protocol = negotiated;
+                        handshakePending = false;
+                        inputSupported = message.getInputRate() > 0;
+                        if (inputSupported) {
+                            inputRate = message.getInputRate();
+                        }
+                        if (UDP_ENABLED && message.getUdpToken() != 0) {
+                            openUdp(message.getUdpPort(), message.getUdpToken());
+                        }
+                    }
+                    Platform.runLater(() -> messageHandler.accept(message));
+                });
             }
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException e) {
             if (connected) {
-                System.err.println("[CLIENT][ERROR] IOException: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                System.err.println("[CLIENT][ERROR] " + e.getClass().getSimpleName() + ": " + e.getMessage());
                 e.printStackTrace();
                 handleConnectionError(e);
             }
         } finally {
             System.out.println("[CLIENT][DEBUG] Message receiving thread finished");
             connected = false;
+            closeUdp();
+        }
+    }
+
+    // Expand a delta snapshot and ack it so the next deltas are built against it
+    private synchronized boolean acceptSnapshot(Message message) {
+        // Stamped here rather than on the FX thread so remote interpolation sees real arrival spacing
+        message.setReceivedAt(System.nanoTime());
+        if (message.getSnapshotSeq() != 0 && message.getSnapshotSeq() <= lastSnapshotSeq) {
+            return false;
+        }
+        if (!snapshots.apply(message)) {
+            System.err.println("[CLIENT][WARN] Unknown baseline " + message.getBaselineSeq() + ", snapshot dropped");
+            return false;
+        }
+        if (message.getSnapshotSeq() != 0) {
+            lastSnapshotSeq = message.getSnapshotSeq();
+        }
+        if (message.getSnapshotSeq() != 0 && protocol == WireProtocol.BINARY) {
+            try {
+                Message ack = new Message(MessageTypes.SNAPSHOT_ACK);
+                ack.setSnapshotSeq(message.getSnapshotSeq());
+                sendUnreliable(ack);
+            } catch (IOException e) {
+                handleConnectionError(e);
+            }
         }
+        return true;
     }
 
     private void handleConnectionError(Exception e) {
@@ -174,7 +443,7 @@ public class NetworkService {
         return connected;
     }
 
-    public void setPlayerId(String playerId) {
+    public void setPlayerId(int playerId) {
         this.playerId = playerId;
     }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package client;
+
+import common.Message;
+import common.Player;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds full player lists from delta snapshots.
+ * The server sends only players that changed since a snapshot we acked,
+ * so we keep recent snapshots around to use as baselines.
+ */
+public class SnapshotAssembler {
+    // Must stay larger than the server's history so an acked baseline is never missing here
+    private static final int CAPACITY = 64;
+
+    private final Map<Integer, Map<Integer, Player>> snapshots =
+            new LinkedHashMap<Integer, Map<Integer, Player>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Map<Integer, Player>> eldest) {
+                    return size() > CAPACITY;
+                }
+            };
+
+    /**
+     * Replace the delta in the message with the full player list.
+     * Returns false if the baseline is unknown and the message has to be dropped.
+     */
+    public boolean apply(Message message) {
+        if (message.getSnapshotSeq() == 0) {
+            return true; // not part of the delta stream, the list is already complete
+        }
+
+        Map<Integer, Player> state = new LinkedHashMap<>();
+        if (message.getBaselineSeq() != 0) {
+            Map<Integer, Player> baseline = snapshots.get(message.getBaselineSeq());
+            if (baseline == null) {
+                return false;
+            }
+            state.putAll(baseline);
+        }
+
+        for (int id : message.getRemovedPlayers()) {
+            state.remove(id);
+        }
+        for (Player player : message.getPlayers()) {
+            Player before = state.get(player.getId());
+            if (player.getName() == null && before != null) {
+                player.setName(before.getName());
+            }
+            state.put(player.getId(), player);
+        }
+        snapshots.put(message.getSnapshotSeq(), state);
+
+        // Controllers get their own copies, the stored snapshot stays untouched
+        List<Player> players = new ArrayList<>(state.size());
+        for (Player player : state.values()) {
+            players.add(player.clone());
+        }
+        message.setPlayers(players);
+        message.setRemovedPlayers(null);
+        return true;
+    }
+
+    public void reset() {
+        snapshots.clear();
+    }
+}
@@ -2,6 +2,7 @@ package client.controllers;
 
 import client.MainApp;
 import client.NetworkService;
+import common.Message;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
@@ -21,6 +22,9 @@ public class ConnectionController {
     @FXML
     private Button connectButton;
 
+    @FXML
+    private Button watchButton;
+
     @FXML
     private Label statusLabel;
 
@@ -54,6 +58,16 @@ public class ConnectionController {
 
     @FXML
     private void connectToServer() {
+        connect(false);
+    }
+
+    // Зритель смотрит уже идущий матч, не занимая в нем места
+    @FXML
+    private void watchMatch() {
+        connect(true);
+    }
+
+    private void connect(boolean spectator) {
         ip = ipField.getText().trim();
         portText = portField.getText().trim();
         name = nameField.getText().trim();
@@ -82,21 +96,35 @@ public class ConnectionController {
 
         statusLabel.setText("Подключение...");
         connectButton.setDisable(true);
+        watchButton.setDisable(true);
 
         // Подключение в отдельном потоке
         new Thread(() -> {
             boolean connected = networkService.connect(ip, port);
             if (connected) {
-                networkService.sendConnect(name);
+                networkService.sendConnect(name, spectator);
             } else {
                 javafx.application.Platform.runLater(() -> {
                     connectButton.setDisable(false);
+                    watchButton.setDisable(false);
                     statusLabel.setText("Не удалось подключиться");
                 });
             }
         }).start();
     }
 
+    // Сервер подбирает матч: показываем место в очереди и примерное ожидание
+    public void showQueueStatus(Message message) {
+        String text = "В очереди: " + message.getQueuePosition() + " из " + message.getQueueSize();
+        if (message.getQueueEta() > 0) {
+            text += String.format(", ~%.0f сек", Math.ceil(message.getQueueEta()));
+        } else if (message.getQueueEta() == 0) {
+            text += ", подбираем комнату...";
+        }
+        statusLabel.setText(text);
+        statusLabel.setStyle("-fx-text-fill: #2980b9;");
+    }
+
     public boolean getShowCompass() {
         return showCompass;
     }
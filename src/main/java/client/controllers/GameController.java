@@ -1,5 +1,6 @@
 package client.controllers;
 
+import client.InterpolationBuffer;
 import client.MainApp;
 import client.NetworkService;
 import common.*;
@@ -71,10 +72,13 @@ public class GameController {
     private double matchStartCountdown = 0;
     private boolean isMatchStarting = false;
 
-    private final Map<String, Player> players = new ConcurrentHashMap<>();
+    private final Map<Integer, Player> players = new ConcurrentHashMap<>();
+    // Чужие игроки рисуются чуть в прошлом, между двумя снимками
+    private final InterpolationBuffer remotePositions = new InterpolationBuffer();
+    private final double[] sampledPosition = new double[2];
     private final Set<KeyCode> pressedKeys = ConcurrentHashMap.newKeySet();
 
-    private String playerId;
+    private int playerId; // слот своего игрока в комнате, 0 - своего игрока нет (зритель)
     private int currentRound;
     private double roundTimeLeft;
     private double roundDuration;
@@ -83,18 +87,34 @@ public class GameController {
     private boolean isRoundActive;
     private boolean gameStarted;
     private boolean isAlive = true;
+    // Выбывший игрок или зритель: только смотрим, ввод не шлем
+    private boolean spectating = false;
 
     private double playerX = GameSettings.WORLD_WIDTH / 2;
     private double playerY = GameSettings.WORLD_HEIGHT / 2;
+    // Команды ввода идут с фиксированной частотой; между ними свой игрок рисуется интерполированно
+    private long lastFrameNanos = 0;
+    private double inputAccumulator = 0;
+    private double previousX = playerX;
+    private double previousY = playerY;
+    // Расхождение прогноза с сервером гасится за несколько кадров, а не рывком
+    private double correctionX = 0;
+    private double correctionY = 0;
     private byte[] field;
+    private int fieldVersion = 0;
+    private int requestedFieldVersion = 0; // RESYNC уже отправлен для этой версии
 
     private Timeline fullScreenCountdownTimeline;
+    private boolean fullScreenCountdownShown = false;
     private double targetDirectionAngle = 0;
     private boolean hasValidDirection = false;
     private Timeline compassAnimation;
 
     private AnimationTimer gameLoop;
 
+    private static final double MAX_SMOOTHED_CORRECTION = 50; // больше - перескакиваем сразу
+    private static final double CORRECTION_DECAY = 0.8; // доля ошибки, остающаяся после кадра
+
     public GameController() {
         this.app = null;
         this.networkService = null;
@@ -120,7 +140,7 @@ public class GameController {
         gameLoop = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                updateGame();
+                updateGame(now);
                 renderGame();
             }
         };
@@ -175,10 +195,22 @@ public class GameController {
         compassCanvas.setManaged(showCompass);
     }
 
-    public void setPlayerId(String playerId) {
+    public void setPlayerId(int playerId) {
         this.playerId = playerId;
     }
 
+    public void setSpectating(boolean spectating) {
+        this.spectating = spectating;
+        if (spectating) {
+            showSpectatorStatus();
+        }
+    }
+
+    private void showSpectatorStatus() {
+        statusLabel.setText(playerId != 0 ? "Вы выбыли. Наблюдение за матчем" : "Наблюдение за матчем");
+        statusLabel.setStyle("-fx-text-fill: #8e44ad;");
+    }
+
     public void updateGameState(Message message) {
         currentRound = message.getRound();
         roundTimeLeft = message.getTimeLeft();
@@ -188,8 +220,11 @@ public class GameController {
         gameStarted = message.isGameStarted();
         matchStartCountdown = message.getMatchStartCountdown();
 
-        if (message.getField() != null) {
-            field = message.getField();
+        // Поле приходит только при смене (MATCH_START/ROUND_START) или по запросу
+        if (!updateField(message) && message.getFieldVersion() != fieldVersion
+                && message.getFieldVersion() != requestedFieldVersion && networkService != null) {
+            requestedFieldVersion = message.getFieldVersion();
+            networkService.sendResync();
         }
 
         // Обработка счетчика матча
@@ -199,8 +234,10 @@ public class GameController {
             isMatchStarting = false;
         }
 
-        // Обработка полноэкранного счетчика при старте матча
-        if (isMatchStarting && Math.abs(matchStartCountdown - 3.0) < 0.1 && !fullScreenCountdown.isVisible()) {
+        // Обработка полноэкранного счетчика при старте матча.
+        // Снимки приходят с частотой тика сервера, поэтому ловим момент перехода через 3 секунды
+        if (isMatchStarting && matchStartCountdown <= 3.0 && !fullScreenCountdownShown) {
+            fullScreenCountdownShown = true;
             showFullScreenCountdown(3);
         }
 
@@ -209,14 +246,25 @@ public class GameController {
         if (message.getPlayers() != null) {
             for (Player p : message.getPlayers()) {
                 count++;
-                if (!p.getId().equals(playerId)) {
+                if (p.getId() != playerId) {
                     players.put(p.getId(), p);
                 } else {
-                    playerX = p.getX();
-                    playerY = p.getY();
+                    if (!isRoundActive || !p.isAlive()) {
+                        playerX = p.getX();
+                        playerY = p.getY();
+                        previousX = playerX;
+                        previousY = playerY;
+                        correctionX = 0;
+                        correctionY = 0;
+                    } else if (networkService != null && networkService.isInputSupported()) {
+                        reconcile(p);
+                    }
+                    // Со старым сервером своя позиция во время раунда считается только локально
                     isAlive = p.isAlive();
                 }
             }
+            remotePositions.add(message.getReceivedAt() != 0 ? message.getReceivedAt() : System.nanoTime(),
+                    players.values());
         }
         playersLabel.setText("Игроков: " + count);
 
@@ -236,6 +284,9 @@ public class GameController {
                 statusLabel.setText(isAlive ? "Вы выжили!" : "Вы проиграли!");
                 statusLabel.setStyle("-fx-text-fill: " + (isAlive ? "#27ae60" : "#e74c3c") + ";");
             }
+            if (spectating) {
+                showSpectatorStatus();
+            }
         }
 
         if (currentTargetColor != null && !currentTargetColor.isEmpty()) {
@@ -253,6 +304,34 @@ public class GameController {
         }
     }
 
+    // Снимок сервера отстает на время пути: берем его позицию как истину
+    // и доигрываем поверх команды, которые сервер еще не применил
+    private void reconcile(Player self) {
+        double step = 1.0 / networkService.getInputRate();
+        double[] predicted = {self.getX(), self.getY()};
+        boolean replayed = networkService.replayInputs(self.getLastInputSeq(), bits -> {
+            predicted[0] = InputBits.stepX(predicted[0], bits, step);
+            predicted[1] = InputBits.stepY(predicted[1], bits, step);
+        });
+        if (!replayed) {
+            return; // подтверждение слишком старое, оставляем свой прогноз
+        }
+
+        double dx = predicted[0] - playerX;
+        double dy = predicted[1] - playerY;
+        playerX = predicted[0];
+        playerY = predicted[1];
+        previousX += dx;
+        previousY += dy;
+        if (dx * dx + dy * dy < MAX_SMOOTHED_CORRECTION * MAX_SMOOTHED_CORRECTION) {
+            correctionX -= dx;
+            correctionY -= dy;
+        } else {
+            correctionX = 0;
+            correctionY = 0;
+        }
+    }
+
     private void updateTargetDirection() {
         if (field == null || currentTargetColor == null || currentTargetColor.isEmpty() || !isRoundActive) {
             hasValidDirection = false;
@@ -321,34 +400,73 @@ public class GameController {
         fullScreenCountdownTimeline.play();
     }
 
-    private void updateGame() {
+    private void updateGame(long now) {
+        double frameTime = lastFrameNanos == 0 ? 0 : (now - lastFrameNanos) / 1e9;
+        lastFrameNanos = now;
+
+        correctionX *= CORRECTION_DECAY;
+        correctionY *= CORRECTION_DECAY;
+
         if (!gameStarted || !isRoundActive || !isAlive || isMatchStarting) {
+            inputAccumulator = 0;
+            previousX = playerX;
+            previousY = playerY;
             return;
         }
 
-        double dx = 0, dy = 0;
-
-        if (pressedKeys.contains(KeyCode.W) || pressedKeys.contains(KeyCode.UP)) dy -= GameSettings.MOVE_SPEED;
-        if (pressedKeys.contains(KeyCode.S) || pressedKeys.contains(KeyCode.DOWN)) dy += GameSettings.MOVE_SPEED;
-        if (pressedKeys.contains(KeyCode.A) || pressedKeys.contains(KeyCode.LEFT)) dx -= GameSettings.MOVE_SPEED;
-        if (pressedKeys.contains(KeyCode.D) || pressedKeys.contains(KeyCode.RIGHT)) dx += GameSettings.MOVE_SPEED;
-
-        // Отладочная информация о движении
-        if ((dx != 0 || dy != 0) && pressedKeys.size() == 0) {
-            System.out.println("[DEBUG] ДВИЖЕНИЕ БЕЗ НАЖАТЫХ КЛАВИШ! Это ошибка состояния.");
-        }
+        int bits = 0;
+        if (pressedKeys.contains(KeyCode.W) || pressedKeys.contains(KeyCode.UP)) bits |= InputBits.UP;
+        if (pressedKeys.contains(KeyCode.S) || pressedKeys.contains(KeyCode.DOWN)) bits |= InputBits.DOWN;
+        if (pressedKeys.contains(KeyCode.A) || pressedKeys.contains(KeyCode.LEFT)) bits |= InputBits.LEFT;
+        if (pressedKeys.contains(KeyCode.D) || pressedKeys.contains(KeyCode.RIGHT)) bits |= InputBits.RIGHT;
 
+        int dx = InputBits.directionX(bits);
+        int dy = InputBits.directionY(bits);
         if (dx != 0 || dy != 0) {
             double targetAngle = Math.atan2(dy, dx);
             compassAngle = smoothAngle(compassAngle, targetAngle, 0.1);
         }
 
-        playerX = Math.max(10, Math.min(playerX + dx, GameSettings.WORLD_WIDTH - 10));
-        playerY = Math.max(10, Math.min(playerY + dy, GameSettings.WORLD_HEIGHT - 10));
+        if (!networkService.isInputSupported()) {
+            // Старый сервер: двигаемся покадрово и шлем координаты
+            playerX = InputBits.stepX(playerX, bits, GameSettings.MOVE_SPEED / GameSettings.MOVE_SPEED_PER_SECOND);
+            playerY = InputBits.stepY(playerY, bits, GameSettings.MOVE_SPEED / GameSettings.MOVE_SPEED_PER_SECOND);
+            previousX = playerX;
+            previousY = playerY;
+            if (bits != 0) {
+                networkService.sendMove(playerX, playerY);
+            }
+            return;
+        }
 
-        if (dx != 0 || dy != 0) {
-            networkService.sendMove(playerX, playerY);
+        // Фиксированный шаг: число команд в секунду не зависит от FPS.
+        // Длинную паузу (свернутое окно) не догоняем
+        double step = 1.0 / networkService.getInputRate();
+        inputAccumulator += Math.min(frameTime, 0.25);
+        int steps = 0;
+        while (inputAccumulator >= step) {
+            inputAccumulator -= step;
+            previousX = playerX;
+            previousY = playerY;
+            playerX = InputBits.stepX(playerX, bits, step);
+            playerY = InputBits.stepY(playerY, bits, step);
+            networkService.addInput(bits);
+            steps++;
         }
+        if (steps > 0) {
+            networkService.flushInputs();
+        }
+    }
+
+    // Позиция своего игрока на экране: между двумя последними шагами ввода
+    private double renderX() {
+        double alpha = Math.min(1, inputAccumulator * networkService.getInputRate());
+        return previousX + (playerX - previousX) * alpha + correctionX;
+    }
+
+    private double renderY() {
+        double alpha = Math.min(1, inputAccumulator * networkService.getInputRate());
+        return previousY + (playerY - previousY) * alpha + correctionY;
     }
 
     private void renderGame() {
@@ -411,10 +529,15 @@ public class GameController {
     }
 
     private void drawPlayers() {
+        long renderTime = remotePositions.renderTime(System.nanoTime());
         for (Player p : players.values()) {
             gc.setFill(p.isAlive() ? Color.RED : Color.GRAY);
             double x = p.getX() - 10;
             double y = p.getY() - 10;
+            if (remotePositions.sample(p.getId(), renderTime, sampledPosition)) {
+                x = sampledPosition[0] - 10;
+                y = sampledPosition[1] - 10;
+            }
             gc.fillOval(x, y, 20, 20);
 
             gc.setStroke(Color.BLACK);
@@ -422,9 +545,13 @@ public class GameController {
             gc.strokeOval(x, y, 20, 20);
         }
 
+        // У зрителя своего игрока нет
+        if (playerId == 0) {
+            return;
+        }
         gc.setFill(isAlive ? Color.BLUE : Color.GRAY);
-        double px = playerX - 10;
-        double py = playerY - 10;
+        double px = renderX() - 10;
+        double py = renderY() - 10;
         gc.fillOval(px, py, 20, 20);
 
         gc.setStroke(Color.CYAN);
@@ -564,9 +691,23 @@ public class GameController {
         roundDuration = message.getDuration();
         roundTimeLeft = roundDuration;
         isRoundActive = true;
+        updateField(message);
+        if (spectating) {
+            showSpectatorStatus();
+        } else {
+            statusLabel.setText("Играем");
+            statusLabel.setStyle("-fx-text-fill: #2c3e50;");
+        }
+    }
+
+    // Принять поле из сообщения, если оно там есть
+    public boolean updateField(Message message) {
+        if (message.getField() == null) {
+            return false;
+        }
         field = message.getField();
-        statusLabel.setText("Играем");
-        statusLabel.setStyle("-fx-text-fill: #2c3e50;");
+        fieldVersion = message.getFieldVersion();
+        return true;
     }
 
     public void cleanup() {
@@ -586,6 +727,7 @@ public class GameController {
 
         // Важно: очищаем состояние клавиш при выходе из игры
         pressedKeys.clear();
+        remotePositions.clear();
     }
 
     // Добавьте этот метод в класс GameController
@@ -1,8 +1,10 @@
 package client.controllers;
 
 import client.MainApp;
+import client.NetworkService;
 import common.Message;
 import common.ScoreboardEntry;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
@@ -11,6 +13,8 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
 
 public class GameOverController {
+    // Строк таблицы рекордов на одной странице
+    private static final int PAGE_SIZE = 10;
 
     @FXML
     private Label titleLabel;
@@ -21,23 +25,46 @@ public class GameOverController {
     @FXML
     private TableView<ScoreboardEntry> scoresTable;
 
+    @FXML
+    private Label rankLabel;
+
+    @FXML
+    private TableColumn<ScoreboardEntry, Integer> placeColumn;
+
     @FXML
     private TableColumn<ScoreboardEntry, String> nameColumn;
 
     @FXML
     private TableColumn<ScoreboardEntry, Integer> winsColumn;
 
+    @FXML
+    private Label pageLabel;
+
+    @FXML
+    private javafx.scene.control.Button prevButton;
+
+    @FXML
+    private javafx.scene.control.Button nextButton;
+
     @FXML
     private javafx.scene.control.Button returnButton;
 
     private MainApp mainApp;
+    private NetworkService networkService;
     private Message gameResultMessage;
+    private int pageOffset = 0; // место первой строки текущей страницы, с 0
+    private int rankedPlayers = 0;
 
     @FXML
     private void initialize() {
         // Настройка таблицы
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("playerName"));
         winsColumn.setCellValueFactory(new PropertyValueFactory<>("wins"));
+        // Номер строки во всей таблице, а не на странице
+        placeColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(
+                pageOffset + scoresTable.getItems().indexOf(cell.getValue()) + 1));
+        prevButton.setDisable(true);
+        nextButton.setDisable(true);
 
         // Включаем политику автоматического изменения размера колонок
         scoresTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
@@ -47,12 +74,68 @@ public class GameOverController {
         this.mainApp = mainApp;
     }
 
+    public void setNetworkService(NetworkService networkService) {
+        this.networkService = networkService;
+    }
+
     public void setMessageData(Message message) {
         this.gameResultMessage = message;
         // Обновляем интерфейс с данными
         if (message != null) {
             updateUIWithMessage(message);
         }
+
+        // Таблица рекордов больше не приходит в GAME_OVER: запрашиваем первую страницу и свое место
+        requestPage(0);
+        if (networkService != null) {
+            networkService.sendRankRequest();
+        }
+    }
+
+    /**
+     * Ответ на LEADERBOARD_REQUEST: показать страницу таблицы рекордов.
+     */
+    public void showLeaderboardPage(Message message) {
+        pageOffset = message.getPageOffset();
+        rankedPlayers = message.getRankedPlayers();
+        scoresTable.setItems(FXCollections.observableArrayList(message.getScores()));
+
+        int last = pageOffset + message.getScores().size();
+        if (rankedPlayers == 0) {
+            pageLabel.setText("Таблица рекордов пуста");
+        } else {
+            pageLabel.setText((pageOffset + 1) + "–" + last + " из " + rankedPlayers);
+        }
+        prevButton.setDisable(pageOffset == 0);
+        nextButton.setDisable(last >= rankedPlayers);
+    }
+
+    /**
+     * Ответ на RANK_REQUEST: место игрока среди всех.
+     */
+    public void showRank(Message message) {
+        if (message.getRank() == 0) {
+            rankLabel.setText("Вас пока нет в таблице рекордов");
+        } else {
+            rankLabel.setText(String.format("Ваше место: %d из %d (рекорд %d, процентиль %.0f)",
+                    message.getRank(), message.getRankedPlayers(), message.getScore(), message.getPercentile()));
+        }
+    }
+
+    private void requestPage(int offset) {
+        if (networkService != null && networkService.isConnected()) {
+            networkService.sendLeaderboardRequest(Math.max(0, offset), PAGE_SIZE);
+        }
+    }
+
+    @FXML
+    private void previousPage() {
+        requestPage(pageOffset - PAGE_SIZE);
+    }
+
+    @FXML
+    private void nextPage() {
+        requestPage(pageOffset + PAGE_SIZE);
     }
 
     private void updateUIWithMessage(Message message) {
@@ -68,16 +151,14 @@ public class GameOverController {
             winnerLabel.setText("Ничья!");
             winnerLabel.setStyle("-fx-text-fill: #f39c12;");
         }
-
-
-        // Заполнение таблицы результатов
-        if (message.getScores() != null && !message.getScores().isEmpty()) {
-            scoresTable.setItems(FXCollections.observableArrayList(message.getScores()));
-        }
     }
 
     @FXML
     private void returnToMain() {
+        // Соединение держалось ради таблицы рекордов
+        if (networkService != null) {
+            networkService.disconnect();
+        }
         if (mainApp != null) {
             mainApp.showConnectionScreen();
         }
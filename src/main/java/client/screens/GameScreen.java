@@ -55,10 +55,10 @@ public class GameScreen extends BorderPane {
     // Кнопка выхода
     private final Button exitButton;
 
-    private final Map<String, Player> players = new ConcurrentHashMap<>();
+    private final Map<Integer, Player> players = new ConcurrentHashMap<>();
     private final Set<KeyCode> pressedKeys = ConcurrentHashMap.newKeySet();
 
-    private String playerId;
+    private int playerId;
     private int currentRound;
     private double roundTimeLeft;
     private double roundDuration;
@@ -257,7 +257,7 @@ public class GameScreen extends BorderPane {
         if (message.getPlayers() != null) {
             for (Player p : message.getPlayers()) {
                 count++;
-                if (!p.getId().equals(playerId)) {
+                if (p.getId() != playerId) {
                     players.put(p.getId(), p);
                 } else {
                     playerX = p.getX();
@@ -606,7 +606,7 @@ public class GameScreen extends BorderPane {
         statusLabel.setText("Играем");
     }
 
-    public void setPlayerId(String playerId) {
+    public void setPlayerId(int playerId) {
         this.playerId = playerId;
     }
 
@@ -0,0 +1,583 @@
+package common;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Компактный бинарный формат сообщений.
+ *
+ * Кадр: int32 длина полезной нагрузки, затем нагрузка:
+ * u8 идентификатор типа (MessageTypes.idOf), int32 маска присутствующих полей
+ * и сами поля в порядке битов маски. Поля фиксированной ширины:
+ * координаты и время - float32, номер раунда - int32, флаги - биты маски,
+ * строки - u16 длина + UTF-8, списки - u16 количество + элементы.
+ * Позиции игроков квантуются в u16 с шагом 1/POSITION_SCALE пикселя,
+ * имя игрока передается, только если оно есть в сообщении (в дельте - у новых).
+ * Игрок обозначается номером слота в комнате (Player.getId) переменной длины:
+ * по 7 бит в байте, старший бит - "дальше есть еще байт"; слоты до 127 - один байт.
+ * Бит F_EXTRA маски означает, что после всех полей идет вторая маска int32
+ * (биты X_*) и поля по ней; так в маске остается место для новых полей.
+ * Все числа big-endian, как в ByteBuffer по умолчанию.
+ */
+public final class BinaryCodec {
+    public static final int LENGTH_PREFIX = 4;
+    public static final int MAX_FRAME_SIZE = 1 << 20; // 1 МБ, как для JSON-строки
+    // 800x600 * 64 помещается в u16 с запасом
+    public static final int POSITION_SCALE = 64;
+
+    // Биты маски присутствия. Новые поля добавлять только в конец
+    private static final int F_PLAYER_ID = 1;
+    private static final int F_PLAYER_NAME = 1 << 1;
+    private static final int F_X = 1 << 2;
+    private static final int F_Y = 1 << 3;
+    private static final int F_TARGET_COLOR = 1 << 4;
+    private static final int F_ROUND = 1 << 5;
+    private static final int F_TIME_LEFT = 1 << 6;
+    private static final int F_DURATION = 1 << 7;
+    private static final int F_GAME_STARTED = 1 << 8;
+    private static final int F_ROUND_ACTIVE = 1 << 9;
+    private static final int F_WINNER = 1 << 10;
+    private static final int F_SCORES = 1 << 11;
+    private static final int F_PLAYERS = 1 << 12;
+    private static final int F_COUNTDOWN = 1 << 13;
+    private static final int F_FIELD = 1 << 14;
+    private static final int F_REASON = 1 << 15;
+    private static final int F_PROTOCOL = 1 << 16;
+    private static final int F_FIELD_VERSION = 1 << 17;
+    private static final int F_SNAPSHOT_SEQ = 1 << 18;
+    private static final int F_BASELINE_SEQ = 1 << 19;
+    private static final int F_REMOVED = 1 << 20;
+    private static final int F_UDP_PORT = 1 << 21;
+    private static final int F_UDP_TOKEN = 1 << 22;
+    private static final int F_INPUT_SEQ = 1 << 23;
+    private static final int F_INPUTS = 1 << 24;
+    private static final int F_INPUT_RATE = 1 << 25;
+    private static final int F_QUEUE_POSITION = 1 << 26;
+    private static final int F_QUEUE_SIZE = 1 << 27;
+    private static final int F_QUEUE_ETA = 1 << 28;
+    private static final int F_SPECTATOR = 1 << 29;
+    private static final int F_EXTRA = 1 << 30;
+
+    // Биты второй маски (после F_EXTRA). Новые поля добавлять только в конец
+    private static final int X_PAGE_OFFSET = 1;
+    private static final int X_PAGE_SIZE = 1 << 1;
+    private static final int X_RANK = 1 << 2;
+    private static final int X_SCORE = 1 << 3;
+    private static final int X_RANKED_PLAYERS = 1 << 4;
+    private static final int X_PERCENTILE = 1 << 5;
+
+    // Флаги игрока в списке players
+    private static final int P_ALIVE = 1;
+    private static final int P_NAME = 1 << 1;
+    private static final int P_INPUT_SEQ = 1 << 2;
+
+    private BinaryCodec() {
+    }
+
+    public static int quantize(double coordinate) {
+        long value = Math.round(coordinate * POSITION_SCALE);
+        return (int) Math.max(0, Math.min(0xFFFF, value));
+    }
+
+    public static double dequantize(int value) {
+        return (double) value / POSITION_SCALE;
+    }
+
+    /**
+     * Закодировать сообщение в кадр вместе с префиксом длины.
+     */
+    public static byte[] encode(Message message) {
+        Writer out = new Writer(estimateSize(message));
+        out.int32(0); // длина, заполняется в конце
+        out.u8(MessageTypes.idOf(message.getType()));
+        int maskPosition = out.size;
+        out.int32(0);
+
+        int mask = 0;
+        if (message.getPlayerId() != 0) {
+            mask |= F_PLAYER_ID;
+            out.slot(message.getPlayerId());
+        }
+        if (message.getPlayerName() != null) {
+            mask |= F_PLAYER_NAME;
+            out.string(message.getPlayerName());
+        }
+        if (message.getX() != 0) {
+            mask |= F_X;
+            out.float32(message.getX());
+        }
+        if (message.getY() != 0) {
+            mask |= F_Y;
+            out.float32(message.getY());
+        }
+        if (message.getTargetColor() != null) {
+            mask |= F_TARGET_COLOR;
+            out.string(message.getTargetColor());
+        }
+        if (message.getRound() != 0) {
+            mask |= F_ROUND;
+            out.int32(message.getRound());
+        }
+        if (message.getTimeLeft() != 0) {
+            mask |= F_TIME_LEFT;
+            out.float32(message.getTimeLeft());
+        }
+        if (message.getDuration() != 0) {
+            mask |= F_DURATION;
+            out.float32(message.getDuration());
+        }
+        if (message.isGameStarted()) {
+            mask |= F_GAME_STARTED;
+        }
+        if (message.isIsRoundActive()) {
+            mask |= F_ROUND_ACTIVE;
+        }
+        if (message.getWinner() != null) {
+            mask |= F_WINNER;
+            out.string(message.getWinner());
+        }
+        if (!message.getScores().isEmpty()) {
+            mask |= F_SCORES;
+            out.u16(message.getScores().size());
+            for (ScoreboardEntry entry : message.getScores()) {
+                out.string(entry.getPlayerName());
+                out.int32(entry.getWins());
+            }
+        }
+        if (!message.getPlayers().isEmpty()) {
+            mask |= F_PLAYERS;
+            out.u16(message.getPlayers().size());
+            if (message.getPlayers() instanceof PlayerColumns) {
+                // Снимок комнаты: пишем прямо из массивов
+                PlayerColumns players = (PlayerColumns) message.getPlayers();
+                for (int i = 0; i < players.size(); i++) {
+                    writePlayer(out, players.getId(i), players.getName(i), players.getX(i), players.getY(i),
+                            players.isAlive(i), players.getLastInputSeq(i));
+                }
+            } else {
+                for (Player player : message.getPlayers()) {
+                    writePlayer(out, player.getId(), player.getName(), player.getX(), player.getY(),
+                            player.isAlive(), player.getLastInputSeq());
+                }
+            }
+        }
+        if (message.getMatchStartCountdown() != 0) {
+            mask |= F_COUNTDOWN;
+            out.float32(message.getMatchStartCountdown());
+        }
+        if (message.getField() != null) {
+            mask |= F_FIELD;
+            out.u16(message.getField().length);
+            out.bytes(message.getField());
+        }
+        if (message.getReason() != null) {
+            mask |= F_REASON;
+            out.string(message.getReason());
+        }
+        if (message.getProtocol() != null) {
+            mask |= F_PROTOCOL;
+            out.string(message.getProtocol());
+        }
+        if (message.getFieldVersion() != 0) {
+            mask |= F_FIELD_VERSION;
+            out.int32(message.getFieldVersion());
+        }
+        if (message.getSnapshotSeq() != 0) {
+            mask |= F_SNAPSHOT_SEQ;
+            out.int32(message.getSnapshotSeq());
+        }
+        if (message.getBaselineSeq() != 0) {
+            mask |= F_BASELINE_SEQ;
+            out.int32(message.getBaselineSeq());
+        }
+        if (!message.getRemovedPlayers().isEmpty()) {
+            mask |= F_REMOVED;
+            out.u16(message.getRemovedPlayers().size());
+            for (int id : message.getRemovedPlayers()) {
+                out.slot(id);
+            }
+        }
+
+        if (message.getUdpPort() != 0) {
+            mask |= F_UDP_PORT;
+            out.u16(message.getUdpPort());
+        }
+        if (message.getUdpToken() != 0) {
+            mask |= F_UDP_TOKEN;
+            out.int64(message.getUdpToken());
+        }
+
+        if (message.getInputSeq() != 0) {
+            mask |= F_INPUT_SEQ;
+            out.int32(message.getInputSeq());
+        }
+        if (message.getInputs() != null) {
+            if (message.getInputs().length > 0xFF) {
+                throw new IllegalArgumentException("Слишком много команд ввода в пачке: " + message.getInputs().length);
+            }
+            mask |= F_INPUTS;
+            out.u8(message.getInputs().length);
+            out.bytes(message.getInputs());
+        }
+        if (message.getInputRate() != 0) {
+            mask |= F_INPUT_RATE;
+            out.u16(message.getInputRate());
+        }
+        if (message.getQueuePosition() != 0) {
+            mask |= F_QUEUE_POSITION;
+            out.int32(message.getQueuePosition());
+        }
+        if (message.getQueueSize() != 0) {
+            mask |= F_QUEUE_SIZE;
+            out.int32(message.getQueueSize());
+        }
+        if (message.getQueueEta() != 0) {
+            mask |= F_QUEUE_ETA;
+            out.float32(message.getQueueEta());
+        }
+        if (message.isSpectator()) {
+            mask |= F_SPECTATOR;
+        }
+        int extra = extraMask(message);
+        if (extra != 0) {
+            mask |= F_EXTRA;
+            out.int32(extra);
+            if ((extra & X_PAGE_OFFSET) != 0) {
+                out.int32(message.getPageOffset());
+            }
+            if ((extra & X_PAGE_SIZE) != 0) {
+                out.u16(message.getPageSize());
+            }
+            if ((extra & X_RANK) != 0) {
+                out.int32(message.getRank());
+            }
+            if ((extra & X_SCORE) != 0) {
+                out.int32(message.getScore());
+            }
+            if ((extra & X_RANKED_PLAYERS) != 0) {
+                out.int32(message.getRankedPlayers());
+            }
+            if ((extra & X_PERCENTILE) != 0) {
+                out.float32(message.getPercentile());
+            }
+        }
+
+        if (out.size - LENGTH_PREFIX > MAX_FRAME_SIZE) {
+            // Такой кадр все равно отбросит FrameDecoder получателя
+            throw new IllegalArgumentException("Слишком длинный бинарный кадр: " + (out.size - LENGTH_PREFIX) + " байт");
+        }
+        out.putInt(0, out.size - LENGTH_PREFIX);
+        out.putInt(maskPosition, mask);
+        return out.toByteArray();
+    }
+
+    private static void writePlayer(Writer out, int id, String name, double x, double y,
+                                    boolean alive, int lastInputSeq) {
+        out.u8((alive ? P_ALIVE : 0) | (name != null ? P_NAME : 0) | (lastInputSeq != 0 ? P_INPUT_SEQ : 0));
+        out.slot(id);
+        if (name != null) {
+            out.string(name);
+        }
+        out.u16(quantize(x));
+        out.u16(quantize(y));
+        if (lastInputSeq != 0) {
+            out.int32(lastInputSeq);
+        }
+    }
+
+    /**
+     * Раскодировать полезную нагрузку кадра (без префикса длины).
+     */
+    public static Message decode(byte[] data, int offset, int length) {
+        if (length > MAX_FRAME_SIZE || offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Некорректный бинарный кадр: " + length + " байт с позиции " + offset);
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, offset, length);
+        try {
+            Message message = new Message(MessageTypes.typeOf(in.get() & 0xFF));
+            int mask = in.getInt();
+
+            if ((mask & F_PLAYER_ID) != 0) {
+                message.setPlayerId(readSlot(in));
+            }
+            if ((mask & F_PLAYER_NAME) != 0) {
+                message.setPlayerName(readString(in));
+            }
+            if ((mask & F_X) != 0) {
+                message.setX(in.getFloat());
+            }
+            if ((mask & F_Y) != 0) {
+                message.setY(in.getFloat());
+            }
+            if ((mask & F_TARGET_COLOR) != 0) {
+                message.setTargetColor(readString(in));
+            }
+            if ((mask & F_ROUND) != 0) {
+                message.setRound(in.getInt());
+            }
+            if ((mask & F_TIME_LEFT) != 0) {
+                message.setTimeLeft(in.getFloat());
+            }
+            if ((mask & F_DURATION) != 0) {
+                message.setDuration(in.getFloat());
+            }
+            message.setGameStarted((mask & F_GAME_STARTED) != 0);
+            message.setIsRoundActive((mask & F_ROUND_ACTIVE) != 0);
+            if ((mask & F_WINNER) != 0) {
+                message.setWinner(readString(in));
+            }
+            if ((mask & F_SCORES) != 0) {
+                int count = in.getShort() & 0xFFFF;
+                List<ScoreboardEntry> scores = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String name = readString(in);
+                    scores.add(new ScoreboardEntry(name, in.getInt()));
+                }
+                message.setScores(scores);
+            }
+            if ((mask & F_PLAYERS) != 0) {
+                int count = in.getShort() & 0xFFFF;
+                List<Player> players = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int flags = in.get();
+                    Player player = new Player();
+                    player.setId(readSlot(in));
+                    if ((flags & P_NAME) != 0) {
+                        player.setName(readString(in));
+                    }
+                    player.setX(dequantize(in.getShort() & 0xFFFF));
+                    player.setY(dequantize(in.getShort() & 0xFFFF));
+                    player.setAlive((flags & P_ALIVE) != 0);
+                    if ((flags & P_INPUT_SEQ) != 0) {
+                        player.setLastInputSeq(in.getInt());
+                    }
+                    players.add(player);
+                }
+                message.setPlayers(players);
+            }
+            if ((mask & F_COUNTDOWN) != 0) {
+                message.setMatchStartCountdown(in.getFloat());
+            }
+            if ((mask & F_FIELD) != 0) {
+                byte[] field = new byte[in.getShort() & 0xFFFF];
+                in.get(field);
+                message.setField(field);
+            }
+            if ((mask & F_REASON) != 0) {
+                message.setReason(readString(in));
+            }
+            if ((mask & F_PROTOCOL) != 0) {
+                message.setProtocol(readString(in));
+            }
+            if ((mask & F_FIELD_VERSION) != 0) {
+                message.setFieldVersion(in.getInt());
+            }
+            if ((mask & F_SNAPSHOT_SEQ) != 0) {
+                message.setSnapshotSeq(in.getInt());
+            }
+            if ((mask & F_BASELINE_SEQ) != 0) {
+                message.setBaselineSeq(in.getInt());
+            }
+            if ((mask & F_REMOVED) != 0) {
+                int count = in.getShort() & 0xFFFF;
+                List<Integer> removed = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    removed.add(readSlot(in));
+                }
+                message.setRemovedPlayers(removed);
+            }
+            if ((mask & F_UDP_PORT) != 0) {
+                message.setUdpPort(in.getShort() & 0xFFFF);
+            }
+            if ((mask & F_UDP_TOKEN) != 0) {
+                message.setUdpToken(in.getLong());
+            }
+            if ((mask & F_INPUT_SEQ) != 0) {
+                message.setInputSeq(in.getInt());
+            }
+            if ((mask & F_INPUTS) != 0) {
+                byte[] inputs = new byte[in.get() & 0xFF];
+                in.get(inputs);
+                message.setInputs(inputs);
+            }
+            if ((mask & F_INPUT_RATE) != 0) {
+                message.setInputRate(in.getShort() & 0xFFFF);
+            }
+            if ((mask & F_QUEUE_POSITION) != 0) {
+                message.setQueuePosition(in.getInt());
+            }
+            if ((mask & F_QUEUE_SIZE) != 0) {
+                message.setQueueSize(in.getInt());
+            }
+            if ((mask & F_QUEUE_ETA) != 0) {
+                message.setQueueEta(in.getFloat());
+            }
+            message.setSpectator((mask & F_SPECTATOR) != 0);
+            if ((mask & F_EXTRA) != 0) {
+                int extra = in.getInt();
+                if ((extra & X_PAGE_OFFSET) != 0) {
+                    message.setPageOffset(in.getInt());
+                }
+                if ((extra & X_PAGE_SIZE) != 0) {
+                    message.setPageSize(in.getShort() & 0xFFFF);
+                }
+                if ((extra & X_RANK) != 0) {
+                    message.setRank(in.getInt());
+                }
+                if ((extra & X_SCORE) != 0) {
+                    message.setScore(in.getInt());
+                }
+                if ((extra & X_RANKED_PLAYERS) != 0) {
+                    message.setRankedPlayers(in.getInt());
+                }
+                if ((extra & X_PERCENTILE) != 0) {
+                    message.setPercentile(in.getFloat());
+                }
+            }
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Обрезанный бинарный кадр: " + length + " байт", e);
+        }
+    }
+
+    private static int extraMask(Message message) {
+        int extra = 0;
+        if (message.getPageOffset() != 0) {
+            extra |= X_PAGE_OFFSET;
+        }
+        if (message.getPageSize() != 0) {
+            if (message.getPageSize() > 0xFFFF) {
+                throw new IllegalArgumentException("Слишком большая страница: " + message.getPageSize());
+            }
+            extra |= X_PAGE_SIZE;
+        }
+        if (message.getRank() != 0) {
+            extra |= X_RANK;
+        }
+        if (message.getScore() != 0) {
+            extra |= X_SCORE;
+        }
+        if (message.getRankedPlayers() != 0) {
+            extra |= X_RANKED_PLAYERS;
+        }
+        if (message.getPercentile() != 0) {
+            extra |= X_PERCENTILE;
+        }
+        return extra;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static int readSlot(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 21; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Слишком длинный номер слота");
+    }
+
+    // Грубая оценка размера, чтобы буфер обычно не пришлось расширять
+    private static int estimateSize(Message message) {
+        int size = 64;
+        if (message.getField() != null) {
+            size += message.getField().length;
+        }
+        size += message.getPlayers().size() * 48;
+        size += message.getScores().size() * 32;
+        return size;
+    }
+
+    /**
+     * Растущий массив байтов без синхронизации ByteArrayOutputStream.
+     */
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void u8(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void u16(int value) {
+            if (value > 0xFFFF) {
+                throw new IllegalArgumentException("Значение не помещается в u16: " + value);
+            }
+            ensure(2);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void slot(int value) {
+            while ((value & ~0x7F) != 0) {
+                u8((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            u8(value);
+        }
+
+        void int32(int value) {
+            ensure(4);
+            putInt(size, value);
+            size += 4;
+        }
+
+        void int64(long value) {
+            int32((int) (value >>> 32));
+            int32((int) value);
+        }
+
+        void float32(double value) {
+            int32(Float.floatToIntBits((float) value));
+        }
+
+        void string(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            u16(utf8.length);
+            bytes(utf8);
+        }
+
+        void bytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, size, value.length);
+            size += value.length;
+        }
+
+        void putInt(int position, int value) {
+            buffer[position] = (byte) (value >>> 24);
+            buffer[position + 1] = (byte) (value >>> 16);
+            buffer[position + 2] = (byte) (value >>> 8);
+            buffer[position + 3] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size + extra, buffer.length * 2));
+            }
+        }
+    }
+}
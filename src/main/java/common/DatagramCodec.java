@@ -0,0 +1,54 @@
+package common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Формат UDP-датаграмм для частых ненадежных сообщений (MOVE, SNAPSHOT_ACK, GAME_STATE).
+ *
+ * Датаграмма: int64 метка клиента (выдается в ответе на CONNECT), int32 номер
+ * датаграммы отправителя и нагрузка кадра BinaryCodec без префикса длины.
+ * Получатель отбрасывает датаграммы с номером не больше уже принятого.
+ */
+public final class DatagramCodec {
+    public static final int HEADER_SIZE = 12;
+    // Меньше типичного MTU, чтобы датаграмма не фрагментировалась
+    public static final int MAX_DATAGRAM_SIZE = 1200;
+
+    private DatagramCodec() {
+    }
+
+    /**
+     * Упаковать кадр BinaryCodec в датаграмму или вернуть null, если он слишком велик.
+     */
+    public static ByteBuffer encode(long token, int seq, byte[] frame) {
+        int payload = frame.length - BinaryCodec.LENGTH_PREFIX;
+        if (HEADER_SIZE + payload > MAX_DATAGRAM_SIZE) {
+            return null;
+        }
+        ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + payload);
+        datagram.putLong(token);
+        datagram.putInt(seq);
+        datagram.put(frame, BinaryCodec.LENGTH_PREFIX, payload);
+        datagram.flip();
+        return datagram;
+    }
+
+    public static long token(ByteBuffer datagram) {
+        return datagram.getLong(0);
+    }
+
+    public static int seq(ByteBuffer datagram) {
+        return datagram.getInt(8);
+    }
+
+    // Нагрузка датаграммы; буфер должен быть в режиме чтения и с доступным массивом
+    public static Message decode(ByteBuffer datagram) {
+        return BinaryCodec.decode(datagram.array(), datagram.arrayOffset() + HEADER_SIZE,
+                datagram.limit() - HEADER_SIZE);
+    }
+
+    // Сравнение номеров с учетом переполнения int
+    public static boolean isNewer(int seq, int last) {
+        return seq - last > 0;
+    }
+}
@@ -0,0 +1,113 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Накопитель входящих байтов, который режет поток на кадры текущего протокола:
+ * строки по '\n' для JSON или кадры с префиксом длины для BINARY.
+ * Протокол можно переключить прямо из обработчика кадра (после CONNECT):
+ * уже накопленный хвост будет разобран по новым правилам.
+ */
+public class FrameDecoder {
+    private static final int MAX_FRAME_SIZE = BinaryCodec.MAX_FRAME_SIZE;
+
+    /**
+     * Получатель целых кадров. Массив переиспользуется, данные действительны
+     * только во время вызова; для JSON это строка без '\n', для BINARY - нагрузка без длины.
+     */
+    public interface FrameHandler {
+        void onFrame(WireProtocol protocol, byte[] data, int offset, int length);
+    }
+
+    private byte[] buffer = new byte[1024];
+    private int size = 0;
+    private int scanned = 0; // до этой позиции '\n' уже искали
+    private WireProtocol protocol = WireProtocol.JSON;
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(WireProtocol protocol) {
+        this.protocol = protocol;
+    }
+
+    public void feed(byte[] data, int offset, int length, FrameHandler handler) {
+        ensureCapacity(size + length);
+        System.arraycopy(data, offset, buffer, size, length);
+        size += length;
+        drain(handler);
+    }
+
+    public void feed(ByteBuffer data, FrameHandler handler) {
+        int length = data.remaining();
+        ensureCapacity(size + length);
+        data.get(buffer, size, length);
+        size += length;
+        drain(handler);
+    }
+
+    private void drain(FrameHandler handler) {
+        int start = 0;
+        while (true) {
+            int next = protocol == WireProtocol.BINARY
+                    ? nextBinaryFrame(start, handler)
+                    : nextLine(start, handler);
+            if (next < 0) {
+                break;
+            }
+            start = next;
+        }
+
+        // Сдвигаем недочитанный хвост в начало буфера
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, size - start);
+            size -= start;
+            scanned = Math.max(0, scanned - start);
+        }
+
+        if (size > MAX_FRAME_SIZE) {
+            throw new IllegalStateException("Слишком длинное сообщение: " + size + " байт без конца кадра");
+        }
+    }
+
+    // Возвращает начало следующего кадра или -1, если целой строки нет
+    private int nextLine(int start, FrameHandler handler) {
+        for (int i = Math.max(start, scanned); i < size; i++) {
+            if (buffer[i] == '\n') {
+                scanned = i + 1;
+                if (i > start) {
+                    handler.onFrame(WireProtocol.JSON, buffer, start, i - start);
+                }
+                return i + 1;
+            }
+        }
+        scanned = size;
+        return -1;
+    }
+
+    private int nextBinaryFrame(int start, FrameHandler handler) {
+        if (size - start < BinaryCodec.LENGTH_PREFIX) {
+            return -1;
+        }
+        int length = ((buffer[start] & 0xFF) << 24) | ((buffer[start + 1] & 0xFF) << 16)
+                | ((buffer[start + 2] & 0xFF) << 8) | (buffer[start + 3] & 0xFF);
+        if (length <= 0 || length > MAX_FRAME_SIZE) {
+            throw new IllegalStateException("Некорректная длина бинарного кадра: " + length);
+        }
+        int end = start + BinaryCodec.LENGTH_PREFIX + length;
+        if (end > size) {
+            return -1;
+        }
+        handler.onFrame(WireProtocol.BINARY, buffer, start + BinaryCodec.LENGTH_PREFIX, length);
+        scanned = end;
+        return end;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+}
@@ -35,4 +35,8 @@ public class GameSettings {
 
     // Скорость движения
     public static final double MOVE_SPEED = 3.0;
+    // Та же скорость для команд ввода: раньше клиент сдвигался на MOVE_SPEED за кадр при ~60 FPS
+    public static final double MOVE_SPEED_PER_SECOND = MOVE_SPEED * 60;
+    // Частота команд ввода по умолчанию, если сервер не прислал свою
+    public static final int DEFAULT_INPUT_RATE = 30;
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package common;
+
+/**
+ * Команда ввода - набор нажатых направлений, упакованный в биты.
+ * Одна команда означает движение в течение 1/inputRate секунды;
+ * сервер и клиент двигают игрока одной и той же функцией step.
+ */
+public final class InputBits {
+    public static final int UP = 1;
+    public static final int DOWN = 1 << 1;
+    public static final int LEFT = 1 << 2;
+    public static final int RIGHT = 1 << 3;
+
+    // Отступ от края поля, как при ограничении MOVE
+    private static final double MARGIN = 10;
+
+    private InputBits() {
+    }
+
+    // -1, 0 или 1 по каждой оси
+    public static int directionX(int bits) {
+        return ((bits & RIGHT) != 0 ? 1 : 0) - ((bits & LEFT) != 0 ? 1 : 0);
+    }
+
+    public static int directionY(int bits) {
+        return ((bits & DOWN) != 0 ? 1 : 0) - ((bits & UP) != 0 ? 1 : 0);
+    }
+
+    public static double stepX(double x, int bits, double dt) {
+        return clamp(x + directionX(bits) * GameSettings.MOVE_SPEED_PER_SECOND * dt, GameSettings.WORLD_WIDTH);
+    }
+
+    public static double stepY(double y, int bits, double dt) {
+        return clamp(y + directionY(bits) * GameSettings.MOVE_SPEED_PER_SECOND * dt, GameSettings.WORLD_HEIGHT);
+    }
+
+    private static double clamp(double value, double size) {
+        return Math.max(MARGIN, Math.min(value, size - MARGIN));
+    }
+}
@@ -7,7 +7,7 @@ import java.util.List;
 
 public class Message {
     private String type;
-    private String playerId;
+    private int playerId; // слот игрока в комнате, 0 - нет (зритель, до входа)
     private String playerName;
     private double x;
     private double y;
@@ -22,7 +22,28 @@ public class Message {
     private List<Player> players;
     private double matchStartCountdown;
     private byte[] field;
+    private int fieldVersion; // растет при каждой генерации поля
+    private int snapshotSeq; // номер снимка игроков, 0 - снимок не годится в базовые
+    private int baselineSeq; // players - изменения относительно этого снимка, 0 - полный список
+    private List<Integer> removedPlayers; // слоты ушедших с момента baselineSeq
+    private int udpPort; // в ответе на CONNECT, если сервер принимает UDP
+    private long udpToken; // метка клиента в каждой датаграмме
+    private int inputSeq; // номер последней команды в inputs
+    private byte[] inputs; // InputBits, от старых к новым; последние повторяются на случай потерь
+    private int inputRate; // в ответе на CONNECT: сколько команд ввода в секунду ждет сервер
+    private int queuePosition; // QUEUE_STATUS: место в очереди, с 1
+    private int queueSize;
+    private double queueEta; // QUEUE_STATUS: оценка ожидания в секундах, -1 - неизвестно
+    private boolean spectator; // CONNECT: наблюдатель, а не игрок (в ответе - подтверждение)
+    private int pageOffset; // LEADERBOARD: с какого места (с 0) начинается страница scores
+    private int pageSize; // LEADERBOARD_REQUEST: сколько строк нужно
+    private int rank; // RANK: место игрока, с 1; 0 - игрока нет в таблице
+    private int score; // RANK: лучший результат игрока
+    private int rankedPlayers; // LEADERBOARD, RANK: сколько всего игроков в таблице
+    private double percentile; // RANK: доля игроков ниже (одинаковые - наполовину), в процентах
     private String reason;
+    private String protocol; // WireProtocol, согласуется в CONNECT
+    private transient long receivedAt; // System.nanoTime() прихода на клиенте, по сети не передается
 
     // Пустой конструктор для Gson
     public Message() {
@@ -41,11 +62,11 @@ public class Message {
         this.type = type;
     }
 
-    public String getPlayerId() {
+    public int getPlayerId() {
         return playerId;
     }
 
-    public void setPlayerId(String playerId) {
+    public void setPlayerId(int playerId) {
         this.playerId = playerId;
     }
 
@@ -168,9 +189,180 @@ public class Message {
         this.field = field;
     }
 
+    public int getFieldVersion() {
+        return fieldVersion;
+    }
+
+    public void setFieldVersion(int fieldVersion) {
+        this.fieldVersion = fieldVersion;
+    }
+
+    public int getSnapshotSeq() {
+        return snapshotSeq;
+    }
+
+    public void setSnapshotSeq(int snapshotSeq) {
+        this.snapshotSeq = snapshotSeq;
+    }
+
+    public int getBaselineSeq() {
+        return baselineSeq;
+    }
+
+    public void setBaselineSeq(int baselineSeq) {
+        this.baselineSeq = baselineSeq;
+    }
+
+    public List<Integer> getRemovedPlayers() {
+        if (removedPlayers == null) {
+            removedPlayers = new ArrayList<>();
+        }
+        return removedPlayers;
+    }
+
+    public void setRemovedPlayers(List<Integer> removedPlayers) {
+        this.removedPlayers = removedPlayers;
+    }
+
+    public int getUdpPort() {
+        return udpPort;
+    }
+
+    public void setUdpPort(int udpPort) {
+        this.udpPort = udpPort;
+    }
+
+    public long getUdpToken() {
+        return udpToken;
+    }
+
+    public void setUdpToken(long udpToken) {
+        this.udpToken = udpToken;
+    }
+
+    public int getInputSeq() {
+        return inputSeq;
+    }
+
+    public void setInputSeq(int inputSeq) {
+        this.inputSeq = inputSeq;
+    }
+
+    public byte[] getInputs() {
+        return inputs;
+    }
+
+    public void setInputs(byte[] inputs) {
+        this.inputs = inputs;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public void setInputRate(int inputRate) {
+        this.inputRate = inputRate;
+    }
+
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    public void setQueuePosition(int queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public double getQueueEta() {
+        return queueEta;
+    }
+
+    public void setQueueEta(double queueEta) {
+        this.queueEta = queueEta;
+    }
+
+    public boolean isSpectator() {
+        return spectator;
+    }
+
+    public void setSpectator(boolean spectator) {
+        this.spectator = spectator;
+    }
+
+    public int getPageOffset() {
+        return pageOffset;
+    }
+
+    public void setPageOffset(int pageOffset) {
+        this.pageOffset = pageOffset;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(int score) {
+        this.score = score;
+    }
+
+    public int getRankedPlayers() {
+        return rankedPlayers;
+    }
+
+    public void setRankedPlayers(int rankedPlayers) {
+        this.rankedPlayers = rankedPlayers;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void setReceivedAt(long receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
     public String getReason() { return reason; }
     public void setReason(String reason) { this.reason = reason; }
 
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
     // Сериализация/десериализация
     private static final Gson gson = new Gson();
 
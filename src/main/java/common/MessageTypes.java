@@ -11,4 +11,60 @@ public class MessageTypes {
     public static final String GAME_OVER = "GAME_OVER";
     public static final String JOIN_REJECTED = "JOIN_REJECTED";
     public static final String PLAYER_ELIMINATED = "PLAYER_ELIMINATED";
-}
\ No newline at end of file
+    // Клиент просит полное состояние с полем (версия поля не совпала)
+    public static final String RESYNC = "RESYNC";
+    // Клиент подтверждает снимок; следующие снимки придут дельтой от него
+    public static final String SNAPSHOT_ACK = "SNAPSHOT_ACK";
+    // Пачка команд ввода клиента (вместо координат MOVE)
+    public static final String INPUT = "INPUT";
+    // Позиция в очереди подбора матча и оценка ожидания (до ответа на CONNECT)
+    public static final String QUEUE_STATUS = "QUEUE_STATUS";
+    // Выбывший игрок остается смотреть матч до конца
+    public static final String SPECTATE = "SPECTATE";
+    // Страница таблицы рекордов: запрос (pageOffset, pageSize) и ответ (scores, rankedPlayers)
+    public static final String LEADERBOARD_REQUEST = "LEADERBOARD_REQUEST";
+    public static final String LEADERBOARD = "LEADERBOARD";
+    // Место игрока в таблице рекордов: запрос (playerName, по умолчанию свое) и ответ
+    public static final String RANK_REQUEST = "RANK_REQUEST";
+    public static final String RANK = "RANK";
+
+    // Числовые идентификаторы для бинарного протокола: индекс в этом массиве.
+    // Новые типы добавлять только в конец, иначе разъедутся старые клиенты
+    private static final String[] BY_ID = {
+            null,
+            CONNECT,
+            DISCONNECT,
+            MOVE,
+            GAME_STATE,
+            ROUND_START,
+            MATCH_START,
+            GAME_OVER,
+            JOIN_REJECTED,
+            PLAYER_ELIMINATED,
+            RESYNC,
+            SNAPSHOT_ACK,
+            INPUT,
+            QUEUE_STATUS,
+            SPECTATE,
+            LEADERBOARD_REQUEST,
+            LEADERBOARD,
+            RANK_REQUEST,
+            RANK
+    };
+
+    public static int idOf(String type) {
+        for (int id = 1; id < BY_ID.length; id++) {
+            if (BY_ID[id].equals(type)) {
+                return id;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный тип сообщения: " + type);
+    }
+
+    public static String typeOf(int id) {
+        if (id <= 0 || id >= BY_ID.length) {
+            throw new IllegalArgumentException("Неизвестный идентификатор типа: " + id);
+        }
+        return BY_ID[id];
+    }
+}
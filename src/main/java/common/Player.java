@@ -1,18 +1,19 @@
 package common;
 
 public class Player {
-    private String id;
+    private int id; // слот в комнате: маленький номер, он же индекс в таблицах комнаты; 0 - еще не в комнате
     private String name;
     private double x;
     private double y;
     private boolean alive;
+    private int lastInputSeq; // номер последней команды ввода, учтенной в x/y
 
     // Конструкторы
     public Player() {
     }
 
-    public Player(String id, String name) {
-        this.id = id;
+    // Слот выдает комната при входе
+    public Player(String name) {
         this.name = name;
         this.x = GameSettings.WORLD_WIDTH / 2;
         this.y = GameSettings.WORLD_HEIGHT / 2;
@@ -20,11 +21,11 @@ public class Player {
     }
 
     // Геттеры и сеттеры
-    public String getId() {
+    public int getId() {
         return id;
     }
 
-    public void setId(String id) {
+    public void setId(int id) {
         this.id = id;
     }
 
@@ -60,6 +61,14 @@ public class Player {
         this.alive = alive;
     }
 
+    public int getLastInputSeq() {
+        return lastInputSeq;
+    }
+
+    public void setLastInputSeq(int lastInputSeq) {
+        this.lastInputSeq = lastInputSeq;
+    }
+
     // Клонирование для потокобезопасности
     public Player clone() {
         Player clone = new Player();
@@ -68,6 +77,7 @@ public class Player {
         clone.setX(this.x);
         clone.setY(this.y);
         clone.setAlive(this.alive);
+        clone.setLastInputSeq(this.lastInputSeq);
         return clone;
     }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package common;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Неизменяемый список игроков в виде параллельных массивов примитивов.
+ * Снимки и дельты комнаты кладут его в Message.players, и кодеки
+ * (BinaryCodec и JSON) пишут игроков прямо из массивов, без объекта Player
+ * на каждого. get(i) собирает новый Player для редких потребителей:
+ * его изменения на список не влияют.
+ */
+@JsonAdapter(PlayerColumns.JsonAdapter.class)
+public final class PlayerColumns extends AbstractList<Player> implements RandomAccess {
+    private final int size;
+    private final int[] ids;
+    private final String[] names; // null - имя не передается (клиент его уже знает)
+    private final double[] x;
+    private final double[] y;
+    private final boolean[] alive;
+    private final int[] lastInputSeq;
+
+    /**
+     * Первые size элементов массивов - игроки списка. Массивы переходят
+     * во владение списка: вызывающий больше их не меняет.
+     */
+    public PlayerColumns(int size, int[] ids, String[] names, double[] x, double[] y,
+                         boolean[] alive, int[] lastInputSeq) {
+        this.size = size;
+        this.ids = ids;
+        this.names = names;
+        this.x = x;
+        this.y = y;
+        this.alive = alive;
+        this.lastInputSeq = lastInputSeq;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Player get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        Player player = new Player();
+        player.setId(ids[index]);
+        player.setName(names[index]);
+        player.setX(x[index]);
+        player.setY(y[index]);
+        player.setAlive(alive[index]);
+        player.setLastInputSeq(lastInputSeq[index]);
+        return player;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public double getX(int index) {
+        return x[index];
+    }
+
+    public double getY(int index) {
+        return y[index];
+    }
+
+    public boolean isAlive(int index) {
+        return alive[index];
+    }
+
+    public int getLastInputSeq(int index) {
+        return lastInputSeq[index];
+    }
+
+    /**
+     * JSON того же вида, что Gson дает для списка Player (null-имя пропускается),
+     * но без промежуточных объектов. Список только отправляется: принимающая
+     * сторона читает обычный List&lt;Player&gt;.
+     */
+    static final class JsonAdapter extends TypeAdapter<PlayerColumns> {
+        @Override
+        public void write(JsonWriter out, PlayerColumns players) throws IOException {
+            out.beginArray();
+            for (int i = 0; i < players.size; i++) {
+                out.beginObject();
+                out.name("id").value(players.ids[i]);
+                if (players.names[i] != null) {
+                    out.name("name").value(players.names[i]);
+                }
+                out.name("x").value(players.x[i]);
+                out.name("y").value(players.y[i]);
+                out.name("alive").value(players.alive[i]);
+                out.name("lastInputSeq").value(players.lastInputSeq[i]);
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        @Override
+        public PlayerColumns read(JsonReader in) {
+            throw new UnsupportedOperationException("PlayerColumns не читается из JSON");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Формат сообщений на соединении. Выбирается при CONNECT:
+ * клиент предлагает протокол, сервер подтверждает его в ответе.
+ * Между своим CONNECT и ответом клиент ничего не отправляет:
+ * сервер переключает разбор входящих кадров сразу после CONNECT.
+ */
+public enum WireProtocol {
+    JSON {   // строки JSON через '\n' (старые клиенты)
+        @Override
+        public byte[] encode(Message message) {
+            return (message.toJson() + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Message decode(byte[] data, int offset, int length) {
+            return Message.fromJson(new String(data, offset, length, StandardCharsets.UTF_8).trim());
+        }
+    },
+    BINARY { // кадры BinaryCodec с 4-байтовой длиной
+        @Override
+        public byte[] encode(Message message) {
+            return BinaryCodec.encode(message);
+        }
+
+        @Override
+        public Message decode(byte[] data, int offset, int length) {
+            return BinaryCodec.decode(data, offset, length);
+        }
+    };
+
+    /**
+     * Кадр целиком, готовый к записи в сокет.
+     */
+    public abstract byte[] encode(Message message);
+
+    /**
+     * Разобрать кадр, выделенный FrameDecoder.
+     */
+    public abstract Message decode(byte[] data, int offset, int length);
+
+    // Неизвестное или пустое значение означает старого клиента
+    public static WireProtocol parse(String value) {
+        if (value != null) {
+            for (WireProtocol protocol : values()) {
+                if (protocol.name().equalsIgnoreCase(value)) {
+                    return protocol;
+                }
+            }
+        }
+        return JSON;
+    }
+}
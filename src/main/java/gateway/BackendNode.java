@@ -0,0 +1,76 @@
+package gateway;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Узел GameServer глазами шлюза: последний отчет и то, что шлюз
+ * успел сделать после него. Используется под блокировкой NodeRegistry.
+ */
+class BackendNode {
+    private final String key;
+    private final InetSocketAddress address;
+    private NodeReport report;
+    private long reportedAt;          // System.nanoTime() последнего отчета, 0 - узел не отвечает
+    private int assignedSinceReport;  // клиенты, отправленные после отчета: их в нем еще нет
+    private int connections;          // живые соединения через шлюз
+
+    BackendNode(NodeReport report) {
+        this.key = key(report);
+        this.address = new InetSocketAddress(report.getHost(), report.getPort());
+    }
+
+    static String key(NodeReport report) {
+        return report.getHost() + ":" + report.getPort();
+    }
+
+    void update(NodeReport report, long now) {
+        this.report = report;
+        this.reportedAt = now;
+        this.assignedSinceReport = 0;
+    }
+
+    boolean isAlive(long now, long timeoutNanos) {
+        return reportedAt != 0 && now - reportedAt <= timeoutNanos;
+    }
+
+    // Все комнаты узла заняты: новые игроки встанут в его очередь
+    boolean isFull() {
+        return report.getRooms() >= report.getMaxRooms();
+    }
+
+    int getLoad() {
+        return report.getPlayers() + report.getQueued() + assignedSinceReport;
+    }
+
+    void assigned() {
+        assignedSinceReport++;
+        connections++;
+    }
+
+    void released() {
+        connections--;
+    }
+
+    void markDown() {
+        reportedAt = 0;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    int getConnections() {
+        return connections;
+    }
+
+    @Override
+    public String toString() {
+        return key + " (комнат " + report.getRooms() + "/" + report.getMaxRooms() +
+                ", игроков " + report.getPlayers() + ", в очереди " + report.getQueued() +
+                ", через шлюз " + connections + ")";
+    }
+}
@@ -0,0 +1,80 @@
+package gateway;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Канал управления: узлы подключаются к шлюзу и шлют NodeReport строками JSON.
+ * Узлов немного, поэтому на каждый свой поток с блокирующим чтением.
+ * Слушает только loopback: отчетам узлов шлюз верит без проверки.
+ */
+class ControlChannel implements Runnable {
+    private final NodeRegistry registry;
+    private final ServerSocket serverSocket;
+
+    ControlChannel(int port, NodeRegistry registry) throws IOException {
+        this.registry = registry;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> readReports(socket), "gateway-control-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("[GATEWAY][ERROR] Ошибка канала управления: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readReports(Socket socket) {
+        BackendNode node = null;
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                NodeReport report;
+                try {
+                    report = NodeReport.fromJson(line);
+                } catch (Exception e) {
+                    System.err.println("[GATEWAY][ERROR] Некорректный отчет узла: " + line);
+                    continue;
+                }
+                if (report == null || report.getHost() == null || report.getPort() <= 0) {
+                    continue;
+                }
+                node = registry.update(report);
+            }
+        } catch (IOException e) {
+            System.err.println("[GATEWAY][WARN] Канал управления узла оборван: " + e.getMessage());
+        } finally {
+            if (node != null) {
+                registry.remove(node);
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка при закрытии канала управления: " + e.getMessage());
+            }
+        }
+    }
+
+    void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при остановке канала управления: " + e.getMessage());
+        }
+    }
+}
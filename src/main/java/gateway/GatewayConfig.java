@@ -0,0 +1,68 @@
+package gateway;
+
+/**
+ * Параметры запуска шлюза. Задаются аргументами вида --ключ=значение.
+ */
+public class GatewayConfig {
+    private int port = 5556;          // сюда подключаются клиенты
+    private int controlPort = 5550;   // сюда подключаются узлы GameServer
+    private long nodeTimeoutMs = 3000; // узел без отчета дольше этого не получает клиентов
+
+    public static GatewayConfig fromArgs(String[] args) {
+        GatewayConfig config = new GatewayConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Ожидается аргумент вида --ключ=значение: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            config.set(key, value);
+        }
+        return config;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "control-port":
+                controlPort = Integer.parseInt(value);
+                break;
+            case "node-timeout-ms":
+                nodeTimeoutMs = Math.max(100, Long.parseLong(value));
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный параметр: --" + key);
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getControlPort() {
+        return controlPort;
+    }
+
+    public void setControlPort(int controlPort) {
+        this.controlPort = controlPort;
+    }
+
+    public long getNodeTimeoutMs() {
+        return nodeTimeoutMs;
+    }
+
+    public void setNodeTimeoutMs(long nodeTimeoutMs) {
+        this.nodeTimeoutMs = nodeTimeoutMs;
+    }
+
+    @Override
+    public String toString() {
+        return "port=" + port + ", controlPort=" + controlPort + ", nodeTimeoutMs=" + nodeTimeoutMs;
+    }
+}
@@ -0,0 +1,61 @@
+package gateway;
+
+import java.io.IOException;
+
+/**
+ * Шлюз перед несколькими процессами GameServer. Клиенты подключаются к нему
+ * как к обычному серверу, шлюз выбирает наименее нагруженный узел и проксирует
+ * TCP-поток. Узлы сами регистрируются по каналу управления и раз в секунду
+ * сообщают нагрузку (GameServer --gateway=host:port).
+ *
+ * UDP шлюз не проксирует: узел сообщает клиенту свой UDP-порт в ответе
+ * на CONNECT, и датаграммы идут на тот же хост напрямую. Поэтому на одной
+ * машине у каждого узла должен быть свой --udp-port.
+ */
+public class GatewayServer {
+    private final GatewayConfig config;
+    private final NodeRegistry registry;
+    private ControlChannel control;
+    private TcpProxy proxy;
+
+    public GatewayServer(GatewayConfig config) {
+        this.config = config;
+        this.registry = new NodeRegistry(config.getNodeTimeoutMs());
+    }
+
+    public void start() {
+        try {
+            control = new ControlChannel(config.getControlPort(), registry);
+            Thread controlThread = new Thread(control, "gateway-control");
+            controlThread.setDaemon(true);
+            controlThread.start();
+
+            proxy = new TcpProxy(config.getPort(), registry);
+            System.out.println("[GATEWAY] Запуск: " + config);
+            proxy.run();
+        } catch (IOException e) {
+            System.err.println("Ошибка шлюза: " + e.getMessage());
+        } finally {
+            stop();
+        }
+    }
+
+    public void stop() {
+        if (proxy != null) {
+            proxy.stop();
+        }
+        if (control != null) {
+            control.stop();
+        }
+    }
+
+    public static void main(String[] args) {
+        // Например: --port=5556 --control-port=5550
+        GatewayServer gateway = new GatewayServer(GatewayConfig.fromArgs(args));
+
+        // Обработка завершения по Ctrl+C
+        Runtime.getRuntime().addShutdownHook(new Thread(gateway::stop));
+
+        gateway.start();
+    }
+}
@@ -0,0 +1,77 @@
+package gateway;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Известные шлюзу узлы. Новый клиент уходит на живой узел с наименьшей
+ * нагрузкой; узлы, где заняты все комнаты, выбираются в последнюю очередь.
+ */
+class NodeRegistry {
+    private final Map<String, BackendNode> nodes = new LinkedHashMap<>();
+    private final long timeoutNanos;
+
+    NodeRegistry(long timeoutMs) {
+        this.timeoutNanos = timeoutMs * 1_000_000L;
+    }
+
+    synchronized BackendNode update(NodeReport report) {
+        BackendNode node = nodes.get(BackendNode.key(report));
+        if (node == null) {
+            node = new BackendNode(report);
+            nodes.put(node.getKey(), node);
+            System.out.println("[GATEWAY] Подключен узел " + node.getKey() + ". Всего узлов: " + nodes.size());
+        }
+        node.update(report, System.nanoTime());
+        return node;
+    }
+
+    /**
+     * Канал управления узла закрылся. Живые соединения через шлюз
+     * доработают сами, новых узел не получит.
+     */
+    synchronized void remove(BackendNode node) {
+        if (nodes.remove(node.getKey(), node)) {
+            System.out.println("[GATEWAY] Узел " + node.getKey() + " отключился. Всего узлов: " + nodes.size());
+        }
+    }
+
+    /**
+     * Выбрать узел для нового клиента, пропуская уже испробованные.
+     * null, если подходящего узла нет.
+     */
+    synchronized BackendNode choose(Collection<BackendNode> exclude) {
+        long now = System.nanoTime();
+        BackendNode best = null;
+        for (BackendNode node : nodes.values()) {
+            if (!node.isAlive(now, timeoutNanos) || exclude.contains(node)) {
+                continue;
+            }
+            if (best == null || isBetter(node, best)) {
+                best = node;
+            }
+        }
+        if (best != null) {
+            best.assigned();
+        }
+        return best;
+    }
+
+    private static boolean isBetter(BackendNode node, BackendNode best) {
+        if (node.isFull() != best.isFull()) {
+            return !node.isFull();
+        }
+        return node.getLoad() < best.getLoad();
+    }
+
+    synchronized void released(BackendNode node) {
+        node.released();
+    }
+
+    // Узел не принял соединение: до следующего отчета клиентов на него не шлем
+    synchronized void connectFailed(BackendNode node) {
+        node.markDown();
+        System.err.println("[GATEWAY][WARN] Узел " + node.getKey() + " не принял соединение");
+    }
+}
@@ -0,0 +1,78 @@
+package gateway;
+
+import com.google.gson.Gson;
+
+/**
+ * Отчет узла GameServer о нагрузке. Узел шлет его шлюзу строкой JSON
+ * по каналу управления раз в секунду; первый отчет регистрирует узел.
+ */
+public class NodeReport {
+    private String host;   // куда шлюзу подключать клиентов
+    private int port;
+    private int rooms;
+    private int maxRooms;
+    private int players;   // соединения в комнатах
+    private int queued;    // игроки в очереди подбора
+
+    // Пустой конструктор для Gson
+    public NodeReport() {
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getRooms() {
+        return rooms;
+    }
+
+    public void setRooms(int rooms) {
+        this.rooms = rooms;
+    }
+
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    public void setMaxRooms(int maxRooms) {
+        this.maxRooms = maxRooms;
+    }
+
+    public int getPlayers() {
+        return players;
+    }
+
+    public void setPlayers(int players) {
+        this.players = players;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public void setQueued(int queued) {
+        this.queued = queued;
+    }
+
+    private static final Gson gson = new Gson();
+
+    public static NodeReport fromJson(String json) {
+        return gson.fromJson(json, NodeReport.class);
+    }
+
+    public String toJson() {
+        return gson.toJson(this);
+    }
+}
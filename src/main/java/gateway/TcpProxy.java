@@ -0,0 +1,288 @@
+package gateway;
+
+import common.Message;
+import common.MessageTypes;
+import common.WireProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Прозрачный TCP-прокси: каждому клиенту выбирается узел, дальше байты
+ * просто перекладываются в обе стороны, протокол игры шлюз не разбирает.
+ * Один поток с селектором. Если получатель не успевает, чтение
+ * с отправителя приостанавливается, пока буфер не освободится.
+ */
+class TcpProxy implements Runnable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Клиентское соединение и соединение с узлом.
+     */
+    private static final class Pair {
+        final SocketChannel client;
+        final SelectionKey clientKey;
+        final ByteBuffer upstream = ByteBuffer.allocate(BUFFER_SIZE);   // клиент -> узел
+        final ByteBuffer downstream = ByteBuffer.allocate(BUFFER_SIZE); // узел -> клиент
+        final List<BackendNode> tried = new ArrayList<>(2);
+        BackendNode node;
+        SocketChannel backend;
+        SelectionKey backendKey;
+        boolean connected;
+        boolean closing; // одна сторона закрылась, дописываем остаток другой
+        boolean closed;
+
+        Pair(SocketChannel client, SelectionKey clientKey) {
+            this.client = client;
+            this.clientKey = clientKey;
+        }
+    }
+
+    private final int port;
+    private final NodeRegistry registry;
+    private final Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    TcpProxy(int port, NodeRegistry registry) throws IOException {
+        this.port = port;
+        this.registry = registry;
+        this.selector = Selector.open();
+    }
+
+    @Override
+    public void run() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else {
+                        handleKey(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("[GATEWAY][ERROR] Ошибка прокси: " + e.getMessage());
+            }
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = serverChannel.accept();
+        if (client == null) {
+            return;
+        }
+        client.configureBlocking(false);
+        client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey clientKey = client.register(selector, SelectionKey.OP_READ);
+        Pair pair = new Pair(client, clientKey);
+        clientKey.attach(pair);
+        connectBackend(pair);
+    }
+
+    private void connectBackend(Pair pair) {
+        BackendNode node = registry.choose(pair.tried);
+        if (node == null) {
+            reject(pair);
+            return;
+        }
+        pair.node = node;
+        pair.tried.add(node);
+        try {
+            SocketChannel backend = SocketChannel.open();
+            pair.backend = backend;
+            backend.configureBlocking(false);
+            backend.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connected = backend.connect(node.getAddress());
+            pair.backendKey = backend.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, pair);
+            if (connected) {
+                onBackendConnected(pair);
+            }
+        } catch (IOException e) {
+            backendFailed(pair);
+        }
+    }
+
+    private void onBackendConnected(Pair pair) throws IOException {
+        pair.connected = true;
+        pair.backendKey.interestOps(SelectionKey.OP_READ);
+        System.out.println("[GATEWAY][DEBUG] Клиент " + pair.client.getRemoteAddress() + " -> узел " + pair.node.getKey());
+        pump(pair, true); // то, что клиент успел прислать, пока шло подключение
+    }
+
+    // Узел не ответил: пробуем следующий, пока они есть
+    private void backendFailed(Pair pair) {
+        registry.connectFailed(pair.node);
+        registry.released(pair.node);
+        pair.node = null;
+        if (pair.backendKey != null) {
+            pair.backendKey.cancel();
+            pair.backendKey = null;
+        }
+        closeQuietly(pair.backend);
+        pair.backend = null;
+        connectBackend(pair);
+    }
+
+    // Ни один узел не доступен. Клиент ждет ответа на CONNECT в JSON, им и отвечаем
+    private void reject(Pair pair) {
+        System.err.println("[GATEWAY][WARN] Нет доступных узлов, клиент отклонен");
+        Message rejection = new Message(MessageTypes.JOIN_REJECTED);
+        rejection.setReason("Нет доступных игровых серверов, попробуйте позже");
+        try {
+            pair.client.write(ByteBuffer.wrap(WireProtocol.JSON.encode(rejection)));
+        } catch (IOException e) {
+            // клиент уже ушел
+        }
+        close(pair);
+    }
+
+    private void handleKey(SelectionKey key) {
+        Pair pair = (Pair) key.attachment();
+        boolean clientSide = key == pair.clientKey;
+        try {
+            if (key.isValid() && key.isConnectable()) {
+                try {
+                    pair.backend.finishConnect();
+                } catch (IOException e) {
+                    backendFailed(pair);
+                    return;
+                }
+                onBackendConnected(pair);
+                return;
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(pair, clientSide);
+            }
+            if (!pair.closed && key.isValid() && key.isWritable()) {
+                pump(pair, !clientSide); // клиенту пишется downstream, узлу - upstream
+            }
+        } catch (IOException e) {
+            close(pair);
+        }
+    }
+
+    private void read(Pair pair, boolean fromClient) throws IOException {
+        SocketChannel source = fromClient ? pair.client : pair.backend;
+        ByteBuffer buffer = fromClient ? pair.upstream : pair.downstream;
+        int bytesRead = source.read(buffer);
+        if (bytesRead == -1) {
+            if (fromClient && !pair.connected) {
+                close(pair);
+                return;
+            }
+            pair.closing = true;
+            (fromClient ? pair.clientKey : pair.backendKey).interestOps(0);
+        }
+        pump(pair, fromClient);
+    }
+
+    /**
+     * Переложить буфер одного направления получателю и поправить интересы ключей:
+     * OP_WRITE получателю, пока в буфере что-то есть, OP_READ отправителю, пока есть место.
+     */
+    private void pump(Pair pair, boolean towardBackend) throws IOException {
+        ByteBuffer buffer = towardBackend ? pair.upstream : pair.downstream;
+        SelectionKey sourceKey = towardBackend ? pair.clientKey : pair.backendKey;
+        if (towardBackend && !pair.connected) {
+            setInterest(sourceKey, SelectionKey.OP_READ, buffer.hasRemaining());
+            return;
+        }
+        SocketChannel target = towardBackend ? pair.backend : pair.client;
+        SelectionKey targetKey = towardBackend ? pair.backendKey : pair.clientKey;
+
+        buffer.flip();
+        target.write(buffer);
+        buffer.compact();
+        boolean pending = buffer.position() > 0;
+
+        if (pair.closing) {
+            if (!pending) {
+                close(pair);
+                return;
+            }
+        } else {
+            setInterest(sourceKey, SelectionKey.OP_READ, buffer.hasRemaining());
+        }
+        setInterest(targetKey, SelectionKey.OP_WRITE, pending);
+    }
+
+    private static void setInterest(SelectionKey key, int op, boolean on) {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        int ops = key.interestOps();
+        key.interestOps(on ? ops | op : ops & ~op);
+    }
+
+    private void close(Pair pair) {
+        if (pair.closed) {
+            return;
+        }
+        pair.closed = true;
+        pair.clientKey.cancel();
+        closeQuietly(pair.client);
+        if (pair.backendKey != null) {
+            pair.backendKey.cancel();
+        }
+        closeQuietly(pair.backend);
+        if (pair.node != null) {
+            registry.released(pair.node);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при закрытии канала: " + e.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (key.attachment() instanceof Pair) {
+                close((Pair) key.attachment());
+            }
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при остановке прокси: " + e.getMessage());
+        }
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,63 @@
+package server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Классический движок: блокирующий accept, поток чтения на каждого клиента
+ * и писатель, который занимает поток только пока есть что отправить.
+ */
+public class BlockingServerEngine implements ServerEngine {
+    private final ServerConfig config;
+    private final RoomManager rooms;
+    private final UdpTransport udp; // null, если UDP выключен
+    private final ExecutorService clientThreads;
+    private ServerSocket serverSocket;
+
+    public BlockingServerEngine(ServerConfig config, RoomManager rooms, UdpTransport udp) {
+        this.config = config;
+        this.rooms = rooms;
+        this.udp = udp;
+        this.clientThreads = createClientExecutor(config.getThreadMode());
+    }
+
+    private static ExecutorService createClientExecutor(ServerConfig.ThreadMode threadMode) {
+        if (threadMode == ServerConfig.ThreadMode.VIRTUAL) {
+            ExecutorService virtualThreads = VirtualThreads.newPerTaskExecutor();
+            if (virtualThreads != null) {
+                System.out.println("[SERVER] Клиенты обслуживаются виртуальными потоками");
+                return virtualThreads;
+            }
+            System.err.println("[SERVER][WARN] Виртуальные потоки недоступны в Java "
+                    + Runtime.version().feature() + " (нужна 21+), используются обычные");
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(config.getPort());
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Socket clientSocket = serverSocket.accept();
+
+            ClientHandler handler = new ClientHandler(clientSocket, rooms, config, udp, clientThreads);
+            clientThreads.submit(handler);
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при остановке сервера: " + e.getMessage());
+        }
+        clientThreads.shutdownNow();
+    }
+}
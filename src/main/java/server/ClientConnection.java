@@ -0,0 +1,405 @@
+package server;
+
+import common.FrameDecoder;
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import common.WireProtocol;
+import server.db.LeaderboardCache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Протокольная часть клиентского соединения, общая для всех сетевых движков.
+ * Наследники отвечают только за транспорт: откуда приходят байты
+ * и как вычерпывать очередь исходящих кадров.
+ */
+public abstract class ClientConnection {
+    // Больше строк за один LEADERBOARD_REQUEST не отдаем
+    private static final int MAX_LEADERBOARD_PAGE = 50;
+
+    private final RoomManager rooms;
+    // Комната, куда игрок попал по CONNECT; null до CONNECT и после конца матча
+    private volatile GameRoom gameRoom;
+    protected final OutboundQueue outbound;
+    private final UdpTransport udp; // null, если UDP выключен
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final Object sendLock = new Object();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicBoolean evicted = new AtomicBoolean(false);
+    // Координаты от старых клиентов ждут тика здесь, а не в очереди команд комнаты
+    private final LatestMove latestMove = new LatestMove();
+
+    private volatile int playerId; // слот в комнате; 0 - не игрок (до входа, зритель)
+    private volatile String playerName;
+    private final AtomicBoolean connectReceived = new AtomicBoolean(false);
+    // Наблюдатель: выбывший игрок или зритель без игрока; ввод от него не принимается
+    private volatile boolean spectating;
+    // Запрошенный в CONNECT протокол; ответ с ним уходит после входа в комнату
+    private volatile WireProtocol negotiatedProtocol = WireProtocol.JSON;
+    private volatile boolean announceProtocol;
+    // Клиент прислал хотя бы одну пачку INPUT; MOVE от него больше не принимается
+    private volatile boolean usesInput;
+    // Протокол исходящих кадров; меняется один раз, в ответе на CONNECT
+    private WireProtocol protocol = WireProtocol.JSON;
+    // Последний снимок, получение которого подтвердил клиент (база для дельт)
+    private volatile int ackedSnapshot = 0;
+    // Выдается бинарным клиентам в ответе на CONNECT, если сервер слушает UDP
+    private volatile UdpTransport.Endpoint udpEndpoint;
+
+    protected ClientConnection(RoomManager rooms, ServerConfig config, UdpTransport udp) {
+        this.rooms = rooms;
+        this.udp = udp;
+        this.outbound = new OutboundQueue(config.getSendQueueBytes(), config.getSendQueueMaxAgeMs());
+    }
+
+    // Входящие байты от транспорта
+    protected void onBytesReceived(byte[] data, int offset, int length) {
+        decoder.feed(data, offset, length, this::onFrame);
+    }
+
+    protected void onBytesReceived(ByteBuffer data) {
+        decoder.feed(data, this::onFrame);
+    }
+
+    private void onFrame(WireProtocol frameProtocol, byte[] data, int offset, int length) {
+        Message message;
+        try {
+            message = frameProtocol.decode(data, offset, length);
+        } catch (Exception e) {
+            System.err.println("[SERVER][ERROR] Ошибка разбора " + frameProtocol + ": " + e.getMessage());
+            if (frameProtocol == WireProtocol.JSON) {
+                System.err.println("[SERVER][DEBUG] Некорректный JSON: " +
+                        new String(data, offset, length, StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        if (message == null || message.getType() == null) {
+            return;
+        }
+        try {
+            handleIncomingMessage(message);
+        } catch (Exception e) {
+            System.err.println("[SERVER][ERROR] Ошибка обработки " + message.getType() + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void handleIncomingMessage(Message message) {
+        GameRoom gameRoom = this.gameRoom;
+        switch (message.getType()) {
+            case MessageTypes.CONNECT:
+                handleConnect(message);
+                break;
+
+            case MessageTypes.MOVE:
+                // Готовые координаты принимаются только от старых JSON-клиентов:
+                // тот, кто ходит командами, не должен обходить их движение сервера
+                if (gameRoom != null && !spectating && negotiatedProtocol == WireProtocol.JSON && !usesInput) {
+                    latestMove.offer(message.getX(), message.getY());
+                }
+                break;
+            case MessageTypes.INPUT:
+                usesInput = true;
+                if (gameRoom != null && !spectating && message.getInputs() != null) {
+                    gameRoom.handlePlayerInput(this, message.getInputSeq(), message.getInputs());
+                }
+                break;
+            case MessageTypes.SPECTATE:
+                // Флаг ставит комната, когда примет запрос (onSpectating); повтор она отбросит сама
+                if (gameRoom != null && playerId != 0 && !spectating) {
+                    gameRoom.spectate(this);
+                }
+                break;
+            case MessageTypes.RESYNC:
+                if (gameRoom != null) {
+                    gameRoom.resyncClient(this);
+                }
+                break;
+            case MessageTypes.SNAPSHOT_ACK:
+                // Подтверждения могут прийти не по порядку только теоретически, но база не должна откатываться
+                if (message.getSnapshotSeq() > ackedSnapshot) {
+                    ackedSnapshot = message.getSnapshotSeq();
+                }
+                break;
+            case MessageTypes.LEADERBOARD_REQUEST:
+                handleLeaderboardRequest(message);
+                break;
+            case MessageTypes.RANK_REQUEST:
+                handleRankRequest(message);
+                break;
+            case MessageTypes.DISCONNECT:
+                disconnect(); // Просто закрываем соединение, очистка в onConnectionClosed
+                break;
+        }
+    }
+
+    // Таблица рекордов в памяти: отвечаем сразу из сетевого потока, комната не нужна
+    private void handleLeaderboardRequest(Message message) {
+        LeaderboardCache leaderboard = rooms.getLeaderboard();
+        int offset = Math.max(0, message.getPageOffset());
+        int size = Math.min(MAX_LEADERBOARD_PAGE, Math.max(1, message.getPageSize()));
+
+        Message response = new Message(MessageTypes.LEADERBOARD);
+        response.setPageOffset(offset);
+        response.setScores(leaderboard.getPage(offset, size));
+        response.setRankedPlayers(leaderboard.getSize());
+        sendMessage(response);
+    }
+
+    private void handleRankRequest(Message message) {
+        LeaderboardCache leaderboard = rooms.getLeaderboard();
+        String name = message.getPlayerName() != null ? message.getPlayerName().trim() : playerName;
+
+        Message response = new Message(MessageTypes.RANK);
+        response.setPlayerName(name);
+        if (name != null) {
+            response.setRank(leaderboard.getRank(name));
+            response.setScore(leaderboard.getScore(name));
+            response.setPercentile(leaderboard.getPercentile(name));
+        }
+        response.setRankedPlayers(leaderboard.getSize());
+        sendMessage(response);
+    }
+
+    private void handleConnect(Message message) {
+        System.out.println("[SERVER][DEBUG] Обработка CONNECT сообщения");
+        if (message.getPlayerName() == null || message.getPlayerName().trim().isEmpty()) {
+            System.err.println("[SERVER][ERROR] Имя игрока не может быть пустым");
+            return;
+        }
+
+        if (!connectReceived.compareAndSet(false, true)) {
+            System.err.println("[SERVER][WARN] Повторный CONNECT от " + playerName + " проигнорирован");
+            return;
+        }
+
+        // Клиент молчит до ответа, поэтому входящий протокол можно сменить сразу,
+        // в потоке чтения; ответ придет позже из цикла комнаты
+        negotiatedProtocol = WireProtocol.parse(message.getProtocol());
+        announceProtocol = message.getProtocol() != null;
+        decoder.setProtocol(negotiatedProtocol);
+
+        String name = message.getPlayerName().trim();
+        if (message.isSpectator()) {
+            spectating = true;
+            playerName = name;
+            rooms.watch(this);
+            return;
+        }
+        rooms.join(this, new Player(name));
+    }
+
+    /**
+     * Игрок добавлен в комнату. Вызывается из цикла комнаты.
+     */
+    void onJoined(GameRoom room, Player player) {
+        playerName = player.getName();
+        playerId = player.getId();
+        gameRoom = room;
+        if (closed.get()) {
+            // Соединение закрылось, пока шел вход: onConnectionClosed комнату уже не увидел
+            room.removePlayer(this);
+            room.unregisterClient(this);
+            return;
+        }
+        System.out.println("[SERVER][DEBUG] Новый игрок: " + playerName + " (слот " + playerId + ") в комнате " + room.getId());
+
+        Message response = new Message(MessageTypes.CONNECT);
+        response.setPlayerId(playerId);
+        response.setPlayerName(playerName);
+        response.setInputRate(room.getInputRate());
+        sendConnectReply(response);
+    }
+
+    /**
+     * Зритель подключен к комнате. Вызывается из цикла комнаты.
+     */
+    void onWatching(GameRoom room) {
+        gameRoom = room;
+        if (closed.get()) {
+            room.unregisterClient(this);
+            return;
+        }
+        System.out.println("[SERVER][DEBUG] Зритель " + playerName + " смотрит комнату " + room.getId());
+
+        Message response = new Message(MessageTypes.CONNECT);
+        response.setPlayerName(playerName);
+        response.setSpectator(true);
+        sendConnectReply(response);
+    }
+
+    /**
+     * Комната приняла выбывшего игрока в наблюдатели. Вызывается из цикла комнаты.
+     */
+    void onSpectating() {
+        spectating = true;
+    }
+
+    // Отправка подтверждения подключения. Ответ еще в JSON, в нем же
+    // сервер сообщает выбранный протокол для всех следующих кадров
+    private void sendConnectReply(Message response) {
+        if (announceProtocol) {
+            response.setProtocol(negotiatedProtocol.name());
+        }
+        // UDP несет бинарные кадры, поэтому предлагается только бинарным клиентам
+        if (udp != null && negotiatedProtocol == WireProtocol.BINARY && udpEndpoint == null) {
+            udpEndpoint = udp.register(this);
+            response.setUdpPort(udp.getPort());
+            response.setUdpToken(udpEndpoint.token);
+        }
+
+        switchProtocol(EncodedMessage.encode(response), negotiatedProtocol);
+    }
+
+    /**
+     * Очередь подбора переполнена или зрителю нечего смотреть.
+     */
+    void onJoinRejected(String reason) {
+        System.out.println("[SERVER][DEBUG] Отказ в подключении: " + reason);
+        Message rejection = new Message(MessageTypes.JOIN_REJECTED);
+        rejection.setReason(reason);
+        sendMessage(rejection);
+    }
+
+    /**
+     * Поставить ответ на CONNECT в очередь старым протоколом и сразу переключиться.
+     * Под sendLock, чтобы рассылка комнаты не вклинилась между ответом и переключением.
+     * Входящие кадры после CONNECT клиент шлет уже новым протоколом (см. handleConnect).
+     */
+    private void switchProtocol(EncodedMessage response, WireProtocol negotiated) {
+        boolean accepted;
+        synchronized (sendLock) {
+            accepted = outbound.offer(response.getFrame(protocol), false);
+            protocol = negotiated;
+        }
+        if (negotiated != WireProtocol.JSON) {
+            System.out.println("[SERVER][DEBUG] Клиент " + playerName + " перешел на протокол " + negotiated);
+        }
+        afterOffer(accepted);
+    }
+
+    /**
+     * Сообщение из UDP-датаграммы. По UDP принимаются только частые
+     * ненадежные сообщения, управляющие идут по TCP.
+     */
+    void onDatagram(Message message) {
+        switch (message.getType()) {
+            case MessageTypes.MOVE:
+            case MessageTypes.INPUT:
+            case MessageTypes.SNAPSHOT_ACK:
+                handleIncomingMessage(message);
+                break;
+            default:
+                System.err.println("[UDP][WARN] Сообщение " + message.getType() + " не принимается по UDP");
+        }
+    }
+
+    /**
+     * Поставить сообщение в очередь отправки. Не блокируется на сети:
+     * медленный клиент отключается, а не тормозит комнату.
+     */
+    public void sendMessage(Message message) {
+        sendEncoded(EncodedMessage.encode(message));
+    }
+
+    /**
+     * Поставить в очередь уже сериализованное сообщение. Рассылка комнаты кодирует
+     * сообщение один раз и передает один и тот же кадр всем клиентам.
+     */
+    public void sendEncoded(EncodedMessage message) {
+        // Вытесняемые снимки не жалко потерять: они идут датаграммой, если клиент на UDP
+        UdpTransport.Endpoint endpoint = udpEndpoint;
+        if (endpoint != null && message.isCoalescable()
+                && udp.send(endpoint, message.getFrame(WireProtocol.BINARY))) {
+            return;
+        }
+
+        boolean accepted;
+        synchronized (sendLock) {
+            accepted = outbound.offer(message.getFrame(protocol), message.isCoalescable());
+        }
+        afterOffer(accepted);
+    }
+
+    private void afterOffer(boolean accepted) {
+        if (!accepted) {
+            evictSlowConsumer();
+            return;
+        }
+        onOutboundReady();
+    }
+
+    private void evictSlowConsumer() {
+        if (evicted.compareAndSet(false, true)) {
+            System.err.println("[SERVER][WARN] Клиент " + playerName + " не успевает читать (в очереди " +
+                    outbound.getQueuedBytes() + " байт), отключаем");
+            disconnect();
+        }
+    }
+
+    /**
+     * В очереди отправки появились кадры; транспорт должен разбудить своего писателя.
+     */
+    protected abstract void onOutboundReady();
+
+    /**
+     * Закрыть транспорт. Может вызываться из любого потока и несколько раз.
+     */
+    public abstract void disconnect();
+
+    /**
+     * Вызывается транспортом ровно один раз после закрытия соединения.
+     */
+    protected void onConnectionClosed() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        outbound.close();
+        if (udpEndpoint != null) {
+            udp.unregister(udpEndpoint);
+        }
+
+        GameRoom room = gameRoom;
+        if (room != null) {
+            if (playerId != 0) {
+                room.removePlayer(this);
+            }
+            room.unregisterClient(this);
+        } else if (connectReceived.get()) {
+            rooms.leave(this); // мог еще стоять в очереди подбора
+        }
+        System.out.println("[SERVER][DEBUG] Клиент окончательно отключен: " + playerName +
+                (latestMove.getReceived() > 0 ? " (MOVE: получено " + latestMove.getReceived() +
+                        ", схлопнуто " + latestMove.getCoalesced() + ")" : ""));
+    }
+
+    /**
+     * Комната закончила матч и отписала это соединение.
+     */
+    void leaveRoom(GameRoom room) {
+        if (gameRoom == room) {
+            gameRoom = null;
+        }
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    LatestMove getLatestMove() {
+        return latestMove;
+    }
+
+    public int getAckedSnapshot() {
+        return ackedSnapshot;
+    }
+
+    public WireProtocol getProtocol() {
+        synchronized (sendLock) {
+            return protocol;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package server;
+
+import common.Message;
+import common.MessageTypes;
+import common.WireProtocol;
+
+/**
+ * Сообщение, сериализованное один раз для всех получателей рассылки.
+ * Кадр каждого протокола кодируется при первом запросе и дальше разделяется
+ * очередями всех клиентов с этим протоколом; массивы после создания не меняются.
+ */
+public final class EncodedMessage {
+    private final Message message;
+    private final String type;
+    private final boolean coalescable;
+    private final byte[][] frames = new byte[WireProtocol.values().length][];
+
+    private EncodedMessage(Message message) {
+        this.message = message;
+        this.type = message.getType();
+        // Снимок с полем (ответ на RESYNC) вытеснять нельзя: следующие снимки поле не несут
+        this.coalescable = MessageTypes.GAME_STATE.equals(type) && message.getField() == null;
+    }
+
+    public static EncodedMessage encode(Message message) {
+        return new EncodedMessage(message);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Кадр для клиента с данным протоколом. Обычно вызывается из одного потока
+     * рассылки, поэтому блокировка не конкурентна.
+     */
+    public synchronized byte[] getFrame(WireProtocol protocol) {
+        byte[] frame = frames[protocol.ordinal()];
+        if (frame == null) {
+            frame = protocol.encode(message);
+            frames[protocol.ordinal()] = frame;
+        }
+        return frame;
+    }
+
+    // GAME_STATE без поля можно вытеснить более свежим, остальные сообщения доставляются все
+    public boolean isCoalescable() {
+        return coalescable;
+    }
+}
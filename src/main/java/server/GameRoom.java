@@ -1,98 +1,288 @@
 package server;
 
 import common.*;
-import server.db.ScoreboardRepository;
+import server.db.ScoreboardWriter;
 
 import java.util.*;
-import java.util.concurrent.*;
-
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Одна комната (матч), устроенная как актор. Все состояние живет в потоке
+ * ее RoomLoop: публичные методы, которые зовут сетевые потоки и подбор,
+ * только кладут неизменяемую команду (RoomCommand) в почтовый ящик комнаты,
+ * а тик в самом начале выполняет накопившиеся команды по порядку.
+ */
 public class GameRoom {
-    private final Map<String, Player> players = new ConcurrentHashMap<>();
+    // Во сколько раз шаг MOVE может превысить скорость: клиент шлет MOVE по кадрам, а не по тикам
+    private static final double MOVE_SLACK = 1.5;
+
+    private final int id;
+    private final RoomLoop loop;
+    private final RoomMailbox mailbox = new RoomMailbox();
+    // Таблицы по слотам: слот - маленький номер, который игрок получает при входе
+    // и который уходит по сети вместо строкового идентификатора. Слот 0 не используется.
+    // Состояние игроков - параллельные массивы (PlayerTable), а не объекты Player
+    private final PlayerTable players;
+    private final ClientConnection[] handlers; // соединение игрока по его слоту
+    private final long[] lastMoveTick; // тик последнего примененного MOVE по слоту
     private final Random random = new Random();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
-    private final ScoreboardRepository scoreboard;
+    private final ScoreboardWriter scoreboard;
 
     // Состояние игры
     private int round = 0;
     private double roundTimeLeft;
     private double roundDuration;
     private String currentTargetColor;
+    private int targetColorIndex; // индекс currentTargetColor в ROUND_COLORS, им помечены клетки поля
     private boolean isRoundActive = false;
     private boolean gameStarted = false;
     private double matchStartCountdown = GameSettings.BASE_MATCH_START_DELAY;
     private byte[] field; // GRID_W * GRID_H
-
-    // Таймеры
-    private ScheduledFuture<?> roundTimer;
-    private ScheduledFuture<?> matchStartTimer;
+    private int fieldVersion = 0; // поле уходит только со сменой версии или по RESYNC
+
+    // Фазы, которые раньше вели отдельные таймеры, теперь считаются в тиках
+    private boolean countdownActive = false;
+    private boolean intermission = false; // пауза между раундами
+    private double intermissionLeft;
+    private int roundSurvivors = 0;
+    private String roundWinner; // единственный выживший последнего раунда
+
+    // Тик симуляции
+    private final int tickRate;
+    private final int sendRate;
+    private final ScheduledFuture<?> tickTask;
+    private long tick = 0;
+    private long lastSnapshotTick = -1;
+    private boolean stateDirty = true; // есть что разослать игрокам
+    private final SnapshotHistory snapshots = new SnapshotHistory();
+
+    // Опубликованный снимок комнаты; пересобирается не чаще раза в тик и только после изменений
+    private final AtomicReference<RoomSnapshot> published = new AtomicReference<>();
+    private boolean snapshotStale = true;
+    private boolean playersStale = true; // менялись игроки, а не только таймеры
+    private PlayerColumns publishedPlayers;
+    // Полное состояние уходит после публикации снимка тика, а не посреди разбора команд
+    private final List<ClientConnection> fullStateRequests = new ArrayList<>();
+
+    // Команды ввода: каждая двигает игрока на 1/inputRate секунды
+    private final int inputRate;
+    private final double inputsPerTick;
+    private final double maxInputCredit;
+    private final InputQueue[] inputs; // по слотам
+    // MOVE старых клиентов за матч: применено тиками и схлопнуто (перезаписано до тика)
+    private long movesApplied = 0;
+    private long movesCoalesced = 0;
 
     // Для рассылки обновлений
-    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
-
-    public GameRoom(ScoreboardRepository scoreboard) {
+    private final List<ClientConnection> clients = new ArrayList<>();
+    // Наблюдатели (выбывшие и зрители): реже получают полный снимок, общий на всех,
+    // и не участвуют в подтверждениях и дельтах игроков
+    private final List<ClientConnection> spectators = new ArrayList<>();
+    private final int spectatorRate;
+
+    // Читаются RoomManager из других потоков
+    private final int maxPlayers;
+    private final AtomicInteger seats = new AtomicInteger(); // игроки плюс входы, еще не дошедшие до цикла
+    private volatile boolean open = true; // матч не начался, вход разрешен
+    private volatile int clientCount = 0;
+    private volatile int spectatorCount = 0;
+
+    GameRoom(int id, ScoreboardWriter scoreboard, RoomLoop loop, ServerConfig config) {
+        this.id = id;
+        this.loop = loop;
+        this.maxPlayers = config.getMaxPlayersPerRoom();
+        this.players = new PlayerTable(maxPlayers, config.getParallelThreshold());
+        this.handlers = new ClientConnection[maxPlayers + 1];
+        this.lastMoveTick = new long[maxPlayers + 1];
+        this.inputs = new InputQueue[maxPlayers + 1];
         this.scoreboard = scoreboard;
+        this.tickRate = config.getTickRate();
+        // Частота рассылки снимков задается отдельно и не может быть выше частоты тика
+        this.sendRate = Math.min(tickRate, config.getSendRate());
+        this.spectatorRate = Math.min(tickRate, config.getSpectatorRate());
+        this.inputRate = config.getInputRate();
+        // В среднем ровно inputRate команд в секунду; запас в два тика - на пачки,
+        // пришедшие неравномерно (см. InputQueue)
+        this.inputsPerTick = (double) inputRate / tickRate;
+        this.maxInputCredit = Math.max(1, 2 * Math.ceil(inputsPerTick));
         generateField();
+
+        // Тик идет в цикле комнаты вместе с остальными ее задачами
+        long periodNanos = 1_000_000_000L / tickRate;
+        this.tickTask = loop.scheduleAtFixedRate(this::tick, periodNanos);
+    }
+
+    /**
+     * Занять место под входящего игрока. Вызывается RoomManager под его блокировкой,
+     * поэтому место не может занять кто-то еще между проверкой и join().
+     */
+    boolean reserveSeat() {
+        while (open) {
+            int taken = seats.get();
+            if (taken >= maxPlayers) {
+                return false;
+            }
+            if (seats.compareAndSet(taken, taken + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Добавить игроков на занятые для них места, всех одной командой.
+     */
+    void join(List<MatchmakingQueue.Entry> entries, RoomManager rooms) {
+        mailbox.post(new RoomCommand.Join(entries, rooms));
+    }
+
+    // Если матч успел начаться, пока команда ждала, места освобождаются
+    // и игроки возвращаются в голову очереди подбора
+    void applyJoin(List<MatchmakingQueue.Entry> entries, RoomManager rooms) {
+        if (gameStarted) {
+            seats.addAndGet(-entries.size());
+            rooms.requeue(entries);
+            return;
+        }
+        for (MatchmakingQueue.Entry entry : entries) {
+            registerClient(entry.client);
+            addPlayer(entry.player, entry.client);
+            entry.client.onJoined(this, entry.player);
+        }
     }
 
     // Регистрация клиента для рассылки обновлений
-    public void registerClient(ClientHandler client) {
+    private void registerClient(ClientConnection client) {
         clients.add(client);
+        clientCount = clients.size();
         System.out.println("[ROOM] Зарегистрирован клиент для обновлений. Всего клиентов: " + clients.size());
     }
 
-    public void unregisterClient(ClientHandler client) {
-        clients.remove(client);
-        System.out.println("[ROOM] Удален клиент из обновлений. Всего клиентов: " + clients.size());
+    public void unregisterClient(ClientConnection client) {
+        mailbox.post(new RoomCommand.Unsubscribe(client));
     }
 
+    void applyUnsubscribe(ClientConnection client) {
+        if (clients.remove(client)) {
+            clientCount = clients.size();
+            System.out.println("[ROOM] Удален клиент из обновлений. Всего клиентов: " + clients.size());
+        } else if (spectators.remove(client)) {
+            spectatorCount = spectators.size();
+        }
+    }
 
-    public synchronized void addPlayer(Player player) {
-        if (gameStarted) {
+    /**
+     * Выбывший игрок остается смотреть матч: его соединение переходит
+     * из рассылки игроков в поток наблюдателей.
+     */
+    public void spectate(ClientConnection client) {
+        mailbox.post(new RoomCommand.Spectate(client));
+    }
+
+    void applySpectate(ClientConnection client) {
+        int slot = slotOf(client);
+        if (slot == 0 || players.isAlive(slot) || !clients.remove(client)) {
+            return; // живой игрок свой матч со стороны не смотрит
+        }
+        clientCount = clients.size();
+        spectators.add(client);
+        spectatorCount = spectators.size();
+        client.onSpectating();
+        System.out.println("[ROOM] Игрок " + players.getName(slot) + " смотрит матч. Наблюдателей: " + spectators.size());
+    }
+
+    /**
+     * Зритель, пришедший с CONNECT без игрока. Получает полное состояние с полем,
+     * дальше - общий поток наблюдателей. Если матч успел закончиться, получает отказ.
+     */
+    void watch(ClientConnection client) {
+        mailbox.post(new RoomCommand.Watch(client));
+    }
+
+    void applyWatch(ClientConnection client) {
+        if (!gameStarted) {
+            client.onJoinRejected("Матч уже закончился, попробуйте еще раз");
             return;
         }
-        players.put(player.getId(), player);
-        System.out.println("[ROOM] Добавлен игрок: " + player.getName() + " (ID: " + player.getId() + ")");
-        System.out.println("[ROOM] Всего игроков: " + players.size());
+        spectators.add(client);
+        spectatorCount = spectators.size();
+        client.onWatching(this);
+        sendFullState(client);
+        System.out.println("[ROOM] Подключен зритель. Наблюдателей: " + spectators.size());
+    }
+
+
+    private void addPlayer(Player player, ClientConnection client) {
+        int slot = players.add(player.getName(), player.getX(), player.getY());
+        player.setId(slot);
+        handlers[slot] = client;
+        lastMoveTick[slot] = tick;
+        // Запас на секунду команд
+        inputs[slot] = new InputQueue(inputRate, inputsPerTick, maxInputCredit);
+        System.out.println("[ROOM] Добавлен игрок: " + player.getName() + " (слот " + slot + ")");
+        System.out.println("[ROOM] Всего игроков: " + players.getCount());
 
         // Если набралось достаточно игроков и игра еще не начата
-        if (players.size() >= 2 && !gameStarted) {
+        if (players.getCount() >= 2 && !gameStarted) {
             startMatchCountdown();
         }
 
-        // Отправляем обновление всем игрокам
-        broadcastGameState();
+        // Обновление уйдет всем игрокам со следующим снимком
+        playersChanged();
     }
 
-    public synchronized void removePlayer(String playerId) {
-        // Сначала удаляем игрока из карты и получаем его
-        Player player = players.remove(playerId);
+    /**
+     * Слот игрока этого соединения, 0 - не игрок комнаты. Слот сверяется с таблицей
+     * соединений: задача, поставленная до конца матча, не должна задеть нового владельца слота.
+     */
+    private int slotOf(ClientConnection client) {
+        int slot = client.getPlayerId();
+        if (slot <= 0 || slot >= handlers.length || handlers[slot] != client) {
+            return 0;
+        }
+        return slot;
+    }
 
-        // Проверяем, что игрок существует
-        if (player == null) {
-            System.out.println("[ROOM] Игрок с ID " + playerId + " не найден для удаления");
+    public void removePlayer(ClientConnection client) {
+        mailbox.post(new RoomCommand.Leave(client));
+    }
+
+    void applyLeave(ClientConnection client) {
+        int slot = slotOf(client);
+        if (slot == 0) {
+            System.out.println("[ROOM] Игрок слота " + client.getPlayerId() + " не найден для удаления");
             return;
         }
+        removePlayerInLoop(slot);
+    }
 
-        String name = player.getName();
-        int roundPlayer = Math.max(0, round - 1);
-        scoreboard.updateIfBetter(name, roundPlayer);
+    private void removePlayerInLoop(int slot) {
+        String name = players.getName(slot);
+        // Выбывшие записаны в итоге раунда, победитель - в конце игры;
+        // здесь только тот, кто ушел посреди матча живым
+        if (gameStarted && players.isAlive(slot)) {
+            scoreboard.submit(name, Math.max(0, round - 1));
+        }
+        players.remove(slot);
+        movesCoalesced += handlers[slot].getLatestMove().getCoalesced();
+        handlers[slot] = null;
+        inputs[slot] = null;
+        seats.decrementAndGet();
 
         System.out.println("[ROOM] Удален игрок: " + name);
 
         // Если во время игры остался только один игрок
-        if (gameStarted && players.size() < 2) {
+        if (gameStarted && players.getCount() < 2) {
             endGame(null);
         }
 
-        // Отправляем обновление всем игрокам
-        broadcastGameState();
+        // Обновление уйдет всем игрокам со следующим снимком
+        playersChanged();
     }
 
     private void startMatchCountdown() {
-        if (matchStartTimer != null && !matchStartTimer.isDone()) {
-            matchStartTimer.cancel(true);
-        }
-
         matchStartCountdown = calculateMatchStartDelay();
 
         // Гарантируем положительное значение
@@ -101,53 +291,172 @@ public class GameRoom {
         }
 
         gameStarted = false;
+        countdownActive = true;
 
         System.out.println("[ROOM] Запуск обратного отсчета до начала матча: " +
                 String.format("%.1f", matchStartCountdown) + " сек");
+    }
 
-        matchStartTimer = scheduler.scheduleAtFixedRate(() -> {
-            matchStartCountdown -= 0.1;
+    // Пора ли рассылки с частотой rate на этом тике. Рассылка идет на тиках, где
+    // tick * rate / tickRate переходит к следующему целому: за секунду ровно rate рассылок,
+    // даже если tickRate на rate не делится (интервал тогда чередуется, например 1 и 2 тика)
+    private boolean isDue(int rate) {
+        return tick * rate / tickRate != (tick - 1) * rate / tickRate;
+    }
 
-            // Если игроков меньше 2, приостанавливаем отсчет
-            if (players.size() < 2) {
-                matchStartCountdown += 0.1;
+    // Один шаг симуляции: таймеры фаз и, sendRate раз в секунду, снимок состояния
+    private void tick() {
+        try {
+            tick++;
+            double dt = 1.0 / tickRate;
+
+            // Сначала команды, пришедшие с прошлого тика, в порядке поступления
+            mailbox.drain(this::applyCommand);
+            applyMoves();
+            applyInputs();
+
+            if (countdownActive) {
+                updateMatchCountdown(dt);
+            } else if (isRoundActive) {
+                updateRound(dt);
+            } else if (intermission) {
+                updateIntermission(dt);
             }
 
-            // Если отсчет дошел до нуля и игроков достаточно - начинаем игру
-            if (matchStartCountdown <= 0 && players.size() >= 2) {
-                startGame();
-                if (matchStartTimer != null) matchStartTimer.cancel(true);
-            } else {
+            // Снимок тика публикуется всегда: его читают и извне комнаты
+            RoomSnapshot snapshot = currentSnapshot();
+            if (stateDirty && lastSnapshotTick != tick && isDue(sendRate)) {
                 broadcastGameState();
             }
-        }, 0, 100, TimeUnit.MILLISECONDS);
+            if (!spectators.isEmpty() && isDue(spectatorRate)) {
+                broadcastSpectatorState(snapshot);
+            }
+            for (ClientConnection client : fullStateRequests) {
+                client.sendMessage(snapshot.toGameState(true, true));
+            }
+            fullStateRequests.clear();
+        } catch (Exception e) {
+            // Исключение не должно останавливать scheduleAtFixedRate
+            System.err.println("[ROOM][ERROR] Ошибка в тике комнаты: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Поменялись фаза или таймеры: нужна рассылка и новый снимок
+    private void stateChanged() {
+        stateDirty = true;
+        snapshotStale = true;
+    }
+
+    // Поменялись игроки: новый снимок соберет и новый список игроков
+    private void playersChanged() {
+        stateChanged();
+        playersStale = true;
+    }
+
+    /**
+     * Снимок текущего состояния. Если с прошлой публикации ничего не менялось,
+     * возвращается уже опубликованный; иначе собирается и публикуется новый.
+     * Копия игроков (массивы примитивов, без объектов Player) пересобирается,
+     * только если менялись игроки.
+     */
+    private RoomSnapshot currentSnapshot() {
+        if (snapshotStale) {
+            if (playersStale) {
+                publishedPlayers = players.toColumns();
+                playersStale = false;
+            }
+            published.set(new RoomSnapshot(id, tick, round, currentTargetColor, roundTimeLeft, roundDuration,
+                    gameStarted, isRoundActive, matchStartCountdown, field, fieldVersion, publishedPlayers));
+            snapshotStale = false;
+        }
+        return published.get();
+    }
+
+    /**
+     * Последний опубликованный снимок; читается из любого потока без блокировок.
+     * До первого тика - null.
+     */
+    public RoomSnapshot getSnapshot() {
+        return published.get();
+    }
+
+    // Ошибка одной команды не должна терять остальные команды тика
+    private void applyCommand(RoomCommand command) {
+        try {
+            command.apply(this);
+        } catch (Exception e) {
+            System.err.println("[ROOM][ERROR] Ошибка в команде комнаты " + command.getClass().getSimpleName() +
+                    ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void updateMatchCountdown(double dt) {
+        // Если игроков меньше 2, приостанавливаем отсчет
+        if (players.getCount() >= 2) {
+            matchStartCountdown -= dt;
+        }
+        stateChanged();
+
+        // Если отсчет дошел до нуля и игроков достаточно - начинаем игру
+        if (matchStartCountdown <= 0 && players.getCount() >= 2) {
+            countdownActive = false;
+            startGame();
+        }
+    }
+
+    private void updateRound(double dt) {
+        roundTimeLeft -= dt;
+        stateChanged();
+
+        if (roundTimeLeft <= 0 || players.getCount() < 2) {
+            endRound();
+        }
+    }
+
+    private void updateIntermission(double dt) {
+        intermissionLeft -= dt;
+        if (intermissionLeft > 0) {
+            return;
+        }
+        intermission = false;
+
+        // Следующий раунд или завершение
+        if (roundSurvivors <= 1) {
+            endGame(roundSurvivors == 1 ? roundWinner : null);
+        } else {
+            startNewRound(false);
+        }
     }
 
     private double calculateMatchStartDelay() {
         // Если это первый вызов после сброса, используем базовое значение
         if (matchStartCountdown == GameSettings.BASE_MATCH_START_DELAY) {
             double delay = GameSettings.BASE_MATCH_START_DELAY -
-                    ((players.size() - 2) * GameSettings.PLAYER_DELAY_REDUCTION);
+                    ((players.getCount() - 2) * GameSettings.PLAYER_DELAY_REDUCTION);
             return Math.max(delay, GameSettings.MIN_MATCH_START_DELAY);
         }
 
         // В противном случае используем текущее значение (для динамического изменения)
         double delay = matchStartCountdown -
-                ((players.size() - 2) * GameSettings.PLAYER_DELAY_REDUCTION);
+                ((players.getCount() - 2) * GameSettings.PLAYER_DELAY_REDUCTION);
         return Math.max(delay, GameSettings.MIN_MATCH_START_DELAY);
     }
 
     private void startGame() {
+        open = false;
         isRoundActive = false;
         currentTargetColor = "#FFFFF";
         gameStarted = true;
-        System.out.println("[ROOM] Игра началась! Всего игроков: " + players.size());
+        System.out.println("[ROOM] Игра началась! Всего игроков: " + players.getCount());
         startNewRound(true);
     }
 
     private void startNewRound(boolean isStart) {
         round++;
-        currentTargetColor = GameSettings.ROUND_COLORS[random.nextInt(GameSettings.ROUND_COLORS.length)];
+        targetColorIndex = random.nextInt(GameSettings.ROUND_COLORS.length);
+        currentTargetColor = GameSettings.ROUND_COLORS[targetColorIndex];
         roundDuration = calculateRoundDuration();
         roundTimeLeft = roundDuration;
         isRoundActive = true;
@@ -166,21 +475,7 @@ public class GameRoom {
             broadcastRoundStart();
         }
 
-        // Запуск таймера раунда
-        if (roundTimer != null && !roundTimer.isDone()) {
-            roundTimer.cancel(true);
-        }
-
-        roundTimer = scheduler.scheduleAtFixedRate(() -> {
-            roundTimeLeft -= 0.1;
-
-            if (roundTimeLeft <= 0 || players.size() < 2) {
-                endRound();
-                if (roundTimer != null) roundTimer.cancel(true);
-            } else {
-                broadcastGameState();
-            }
-        }, 0, 100, TimeUnit.MILLISECONDS);
+        stateChanged();
     }
 
     private double calculateRoundDuration() {
@@ -192,89 +487,92 @@ public class GameRoom {
         isRoundActive = false;
         System.out.println("[ROOM] Раунд " + round + " завершен");
 
-        List<Player> survivors = new ArrayList<>();
-        List<String> eliminatedPlayers = new ArrayList<>();
-
-        for (Player player : players.values()) {
-            if (player.isAlive()) {
-                String spotColor = getSpotColorAt(player.getX(), player.getY());
-                if (spotColor.equals(currentTargetColor)) {
-                    survivors.add(player);
-                    System.out.println("[ROOM] Игрок выжил: " + player.getName());
-                } else {
-                    player.setAlive(false);
-                    eliminatedPlayers.add(player.getId());
-                    System.out.println("[ROOM] Игрок выбыл: " + player.getName() +
-                            " (стоял на " + spotColor + ", нужен " + currentTargetColor + ")");
-                }
+        // Сравнение индексов цвета по массивам игроков; в большой комнате - параллельно
+        int survivors = players.evaluateRound(field, targetColorIndex);
+        roundWinner = null;
+        int eliminated = 0;
+        for (int slot = 1; slot < players.getSlotCount(); slot++) {
+            if (players.isEliminated(slot)) {
+                eliminated++;
+                // Результат - пройденные раунды; выбывший может досмотреть матч,
+                // и к его уходу номер раунда уже будет сброшен
+                scoreboard.submit(players.getName(slot), Math.max(0, round - 1));
+            } else if (players.isAlive(slot)) {
+                roundWinner = players.getName(slot);
             }
         }
+        System.out.println("[ROOM] Раунд " + round + ": выжили " + survivors + ", выбыли " + eliminated +
+                " (нужен " + currentTargetColor + ")");
 
+        // Итог раунда уходит сразу, вне очередности снимков
+        playersChanged();
         broadcastGameState();
 
-        // Отправляем персональные сообщения eliminated игрокам
-        for (String playerId : eliminatedPlayers) {
-            sendPlayerEliminated(playerId);
-        }
-
-        // Задержка перед следующим раундом или завершением
-        scheduler.schedule(() -> {
-            if (survivors.size() <= 1) {
-                Player winner = survivors.isEmpty() ? null : survivors.get(0);
-                endGame(winner);
-            } else {
-                startNewRound(false);
-            }
-        }, 2000, TimeUnit.MILLISECONDS);
-    }
-
-    private void sendPlayerEliminated(String playerId) {
-        ClientHandler handler = getClientHandlerByPlayerId(playerId);
-        if (handler != null) {
+        // Сообщение выбывшим одинаково для всех, кодируется один раз
+        if (eliminated > 0) {
             Message msg = new Message(MessageTypes.PLAYER_ELIMINATED);
             msg.setWinner("Вы проиграли!");
-
-            // Добавляем текущий scoreboard для выбывшего игрока
-            List<ScoreboardEntry> topScores = scoreboard.getTop(10);
-            msg.setScores(topScores);
-
-            handler.sendMessage(msg);
-        }
-    }
-
-    // Вспомогательный метод для получения ClientHandler по playerId
-    private ClientHandler getClientHandlerByPlayerId(String playerId) {
-        for (ClientHandler handler : clients) {
-            if (playerId.equals(handler.getPlayerId())) {
-                return handler;
+            EncodedMessage message = EncodedMessage.encode(msg);
+            for (int slot = 1; slot < players.getSlotCount(); slot++) {
+                if (players.isEliminated(slot) && handlers[slot] != null) {
+                    handlers[slot].sendEncoded(message);
+                }
             }
         }
-        return null;
+
+        // Пауза перед следующим раундом или завершением
+        roundSurvivors = survivors;
+        intermission = true;
+        intermissionLeft = 2.0;
     }
 
-    private void endGame(Player winner) {
+    // winner - имя победителя, null - ничья
+    private void endGame(String winner) {
         if (winner != null) {
-            System.out.println("[ROOM] Игра завершена. Победитель: " + winner.getName());
+            System.out.println("[ROOM] Игра завершена. Победитель: " + winner);
 
             // score = количество раундов
-            scoreboard.updateIfBetter(winner.getName(), round);
+            scoreboard.submit(winner, round);
         } else {
             System.out.println("[ROOM] Игра завершена. Ничья.");
         }
+        // Остальные живые (ничья, соперники ушли) - до того, как сброс обнулит раунд
+        for (int slot = 1; slot < players.getSlotCount(); slot++) {
+            if (players.isOccupied(slot) && players.isAlive(slot) && !players.getName(slot).equals(winner)) {
+                scoreboard.submit(players.getName(slot), Math.max(0, round - 1));
+            }
+        }
 
         broadcastGameOver(winner);
         resetParamsGame();
+        if (movesApplied > 0 || movesCoalesced > 0) {
+            System.out.println("[ROOM] MOVE за матч: применено " + movesApplied + ", схлопнуто " + movesCoalesced);
+        }
+        movesApplied = 0;
+        movesCoalesced = 0;
+
+        // Участники и зрители закончившегося матча больше не получают рассылку:
+        // комната свободна для следующего набора или будет закрыта
+        for (ClientConnection client : clients) {
+            client.leaveRoom(this);
+        }
+        for (ClientConnection spectator : spectators) {
+            spectator.leaveRoom(this);
+        }
+        clients.clear();
+        spectators.clear();
+        clientCount = 0;
+        spectatorCount = 0;
+        open = true;
     }
 
 
     public void resetParamsGame() {
-        // Отменяем все таймеры
-        if (roundTimer != null && !roundTimer.isDone()) {
-            roundTimer.cancel(true);
-        }
-        if (matchStartTimer != null && !matchStartTimer.isDone()) {
-            matchStartTimer.cancel(true);
-        }
+        // Останавливаем все фазы
+        countdownActive = false;
+        intermission = false;
+        roundSurvivors = 0;
+        roundWinner = null;
 
         // Сбрасываем параметры игры
         gameStarted = false;
@@ -286,75 +584,176 @@ public class GameRoom {
 
         System.out.println("[ROOM] Сброс комнаты");
 
-        // Создаем копию ключей для безопасного удаления
-        List<String> playerIds = new ArrayList<>(players.keySet());
-        for (String playerId : playerIds) {
-            removePlayer(playerId);
+        for (int slot = 1; slot < players.getSlotCount(); slot++) {
+            if (players.isOccupied(slot)) {
+                removePlayerInLoop(slot);
+            }
         }
 
         // Генерируем новое поле для следующей игры
         generateField();
 
-        // Отправляем обновление состояния
-        broadcastGameState();
+        // Обновление состояния уйдет со следующим снимком
+        stateChanged();
     }
 
-    private String getSpotColorAt(double x, double y) {
-        int gx = (int) (x / GameSettings.CELL_SIZE);
-        int gy = (int) (y / GameSettings.CELL_SIZE);
+    // Команды ввода копятся в очереди игрока и применяются в тике
+    public void handlePlayerInput(ClientConnection client, int lastSeq, byte[] directions) {
+        mailbox.post(new RoomCommand.Input(client, lastSeq, directions));
+    }
 
-        gx = Math.max(0, Math.min(gx, GameSettings.GRID_W - 1));
-        gy = Math.max(0, Math.min(gy, GameSettings.GRID_H - 1));
+    void applyInput(ClientConnection client, int lastSeq, byte[] directions) {
+        int slot = slotOf(client);
+        if (slot != 0) {
+            inputs[slot].offer(lastSeq, directions);
+        }
+    }
 
-        int index = field[gy * GameSettings.GRID_W + gx];
-        return GameSettings.ROUND_COLORS[index];
+    public int getInputRate() {
+        return inputRate;
     }
 
+    private void applyInputs() {
+        double step = 1.0 / inputRate;
+        for (int slot = 1; slot < players.getSlotCount(); slot++) {
+            InputQueue queue = inputs[slot];
+            if (queue == null) {
+                continue;
+            }
+            if (!players.isAlive(slot)) {
+                queue.clear();
+                continue;
+            }
+            int s = slot;
+            int applied = queue.drain(bits -> {
+                players.setX(s, InputBits.stepX(players.getX(s), bits, step));
+                players.setY(s, InputBits.stepY(players.getY(s), bits, step));
+            });
+            if (applied > 0) {
+                // По этому номеру клиент отбрасывает подтвержденные команды и доигрывает остальные
+                players.setLastInputSeq(slot, queue.getLastAppliedSeq());
+                playersChanged();
+            }
+        }
+    }
+
+    /**
+     * Старые клиенты присылают готовые координаты. Сетевой поток кладет их
+     * в LatestMove соединения; тик забирает по одному, последнему, на игрока.
+     */
+    private void applyMoves() {
+        for (int slot = 1; slot < handlers.length; slot++) {
+            ClientConnection handler = handlers[slot];
+            if (handler == null) {
+                continue;
+            }
+            long move = handler.getLatestMove().take();
+            if (move != LatestMove.NONE) {
+                movesApplied++;
+                applyMove(slot, LatestMove.x(move), LatestMove.y(move));
+            }
+        }
+    }
+
+    private void applyMove(int slot, double x, double y) {
+        if (players.isAlive(slot)) {
+            // Не дальше, чем игрок мог пройти с прошлого MOVE (с запасом на неровную доставку),
+            // иначе MOVE - телепорт в обход скорости
+            long ticks = Math.min(tick - lastMoveTick[slot], Math.max(1, tickRate / 5));
+            lastMoveTick[slot] = tick;
+            double maxStep = MOVE_SLACK * GameSettings.MOVE_SPEED_PER_SECOND * Math.max(1, ticks) / tickRate;
+            double currentX = players.getX(slot);
+            double currentY = players.getY(slot);
+            x = Math.max(currentX - maxStep, Math.min(x, currentX + maxStep));
+            y = Math.max(currentY - maxStep, Math.min(y, currentY + maxStep));
 
-    public void handlePlayerMove(String playerId, double x, double y) {
-        Player player = players.get(playerId);
-        if (player != null && player.isAlive()) {
             // Ограничение движения в пределах поля
             double boundedX = Math.max(10, Math.min(x, GameSettings.WORLD_WIDTH - 10));
             double boundedY = Math.max(10, Math.min(y, GameSettings.WORLD_HEIGHT - 10));
-            player.setX(boundedX);
-            player.setY(boundedY);
-            broadcastGameState();
+            players.setX(slot, boundedX);
+            players.setY(slot, boundedY);
+            // Только меняем состояние: клиенты увидят его в ближайшем снимке тика
+            playersChanged();
         }
     }
 
-    // Рассылка обновлений всем клиентам
+    // Рассылка обновлений всем клиентам и наблюдателям
     private void broadcastMessage(Message message) {
-        for (ClientHandler client : new ArrayList<>(clients)) {
+        // Сериализуем один раз, всем клиентам уходит один и тот же кадр
+        EncodedMessage encoded = EncodedMessage.encode(message);
+        sendToAll(clients, encoded);
+        sendToAll(spectators, encoded);
+    }
+
+    private void sendToAll(List<ClientConnection> recipients, EncodedMessage encoded) {
+        Iterator<ClientConnection> iterator = recipients.iterator();
+        while (iterator.hasNext()) {
             try {
-                client.sendMessage(message);
+                iterator.next().sendEncoded(encoded);
             } catch (Exception e) {
                 System.err.println("[ROOM][ERROR] Ошибка отправки сообщения клиенту: " + e.getMessage());
-                clients.remove(client);
+                iterator.remove();
             }
         }
+        clientCount = clients.size();
+        spectatorCount = spectators.size();
     }
 
-    private void broadcastGameState() {
-        Message msg = new Message(MessageTypes.GAME_STATE);
-        msg.setRound(round);
-        msg.setTargetColor(currentTargetColor);
-        msg.setTimeLeft(roundTimeLeft);
-        msg.setDuration(roundDuration);
-        msg.setGameStarted(gameStarted);
-        msg.setIsRoundActive(isRoundActive);
-        msg.setMatchStartCountdown(matchStartCountdown);
-        msg.setField(field);
+    /**
+     * Снимок наблюдателям: опубликованный снимок комнаты без номера снимка
+     * (вне цепочки дельт, подтверждать нечего), закодированный один раз на всех.
+     * На каждого наблюдателя приходится только постановка готового кадра в очередь;
+     * не успевающему старый снимок вытесняется новым.
+     */
+    private void broadcastSpectatorState(RoomSnapshot snapshot) {
+        sendToAll(spectators, EncodedMessage.encode(snapshot.toGameState(false, true)));
+    }
 
-        // Передаем клонов для потокобезопасности
-        List<Player> playerList = new ArrayList<>();
-        for (Player player : players.values()) {
-            playerList.add(player.clone());
+    private void broadcastGameState() {
+        lastSnapshotTick = tick;
+        stateDirty = false;
+
+        // Полный снимок - JSON-клиентам и тем, у кого еще нет подтвержденной базы
+        RoomSnapshot snapshot = currentSnapshot();
+        int seq = snapshots.record(players);
+        Message full = snapshot.toGameState(false, true);
+        full.setSnapshotSeq(seq);
+        EncodedMessage fullEncoded = EncodedMessage.encode(full);
+
+        // Дельта кодируется один раз на каждую встретившуюся базу
+        Map<Integer, EncodedMessage> deltas = new HashMap<>();
+        Iterator<ClientConnection> iterator = clients.iterator();
+        while (iterator.hasNext()) {
+            ClientConnection client = iterator.next();
+            EncodedMessage encoded = fullEncoded;
+            int baseline = client.getAckedSnapshot();
+            if (client.getProtocol() == WireProtocol.BINARY && snapshots.contains(baseline)) {
+                encoded = deltas.computeIfAbsent(baseline, base -> encodeDelta(snapshot, base));
+            }
+            try {
+                client.sendEncoded(encoded);
+            } catch (Exception e) {
+                System.err.println("[ROOM][ERROR] Ошибка отправки сообщения клиенту: " + e.getMessage());
+                iterator.remove();
+                clientCount = clients.size();
+            }
         }
-        msg.setPlayers(playerList);
+    }
 
+    private EncodedMessage encodeDelta(RoomSnapshot snapshot, int baseline) {
+        Message delta = snapshot.toGameState(false, false);
+        snapshots.fillDelta(delta, baseline);
+        return EncodedMessage.encode(delta);
+    }
 
-        broadcastMessage(msg);
+    // Полный снимок с полем одному клиенту, у которого не совпала версия поля
+    public void resyncClient(ClientConnection client) {
+        mailbox.post(new RoomCommand.Resync(client));
+    }
+
+    // Уйдет в конце тика из опубликованного снимка (см. tick)
+    void sendFullState(ClientConnection client) {
+        fullStateRequests.add(client);
     }
 
     private void broadcastRoundStart() {
@@ -362,6 +761,7 @@ public class GameRoom {
         msg.setTargetColor(currentTargetColor);
         msg.setDuration(roundDuration);
         msg.setField(field);
+        msg.setFieldVersion(fieldVersion);
         broadcastMessage(msg);
     }
 
@@ -372,20 +772,18 @@ public class GameRoom {
         msg.setTargetColor(currentTargetColor);
         msg.setDuration(roundDuration);
         msg.setField(field);
+        msg.setFieldVersion(fieldVersion);
         broadcastMessage(msg);
     }
 
-    private void broadcastGameOver(Player winner) {
+    private void broadcastGameOver(String winner) {
         Message msg = new Message(MessageTypes.GAME_OVER);
 
         if (winner != null) {
-            msg.setWinner(winner.getName());
+            msg.setWinner(winner);
         }
 
-        // Получаем ТОП-10 из SQLite
-        List<ScoreboardEntry> topScores = scoreboard.getTop(10);
-
-        msg.setScores(topScores);
+        // Таблицу рекордов клиент запрашивает сам (LEADERBOARD_REQUEST, RANK_REQUEST)
         broadcastMessage(msg);
     }
 
@@ -393,7 +791,10 @@ public class GameRoom {
     private void generateField() {
         int w = GameSettings.GRID_W;
         int h = GameSettings.GRID_H;
+        // Новый массив на каждую генерацию: старый мог уйти в уже закодированные сообщения
         field = new byte[w * h];
+        fieldVersion++;
+        snapshotStale = true;
 
         // Инициализируем поле базовым цветом (например, первым цветом)
         byte baseColor = 0;
@@ -479,4 +880,32 @@ public class GameRoom {
     public boolean isGameStarted() {
         return gameStarted;
     }
+
+    public int getId() {
+        return id;
+    }
+
+    // Ни игроков (в том числе входящих), ни подписанных соединений: комнату можно закрыть
+    boolean isIdle() {
+        return seats.get() == 0 && clientCount == 0 && spectatorCount == 0;
+    }
+
+    // Идет матч: вход закрыт, зато можно смотреть
+    boolean isMatchRunning() {
+        return !open;
+    }
+
+    // Подписанные соединения; читается из других потоков для отчета о нагрузке
+    int getClientCount() {
+        return clientCount;
+    }
+
+    RoomLoop getLoop() {
+        return loop;
+    }
+
+    // Остановить тик комнаты
+    public void close() {
+        tickTask.cancel(false);
+    }
 }
\ No newline at end of file
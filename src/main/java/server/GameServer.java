@@ -1,35 +1,55 @@
 package server;
 
+import server.db.LeaderboardCache;
 import server.db.ScoreboardRepository;
+import server.db.ScoreboardWriter;
+import server.nio.NioServerEngine;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class GameServer {
-    private static final int PORT = 5556;
-    private ServerSocket serverSocket;
-    private final ExecutorService clientThreads = Executors.newCachedThreadPool();
-    private final GameRoom gameRoom;
+    private final ServerConfig config;
+    private final RoomManager rooms;
     private final ScoreboardRepository scoreboard;
+    private final LeaderboardCache leaderboard;
+    private final ScoreboardWriter scoreboardWriter;
+    private ServerEngine engine;
+    private UdpTransport udp;
+    private GatewayReporter gatewayReporter;
 
     public GameServer() {
+        this(new ServerConfig());
+    }
+
+    public GameServer(ServerConfig config) {
+        this.config = config;
         this.scoreboard = new ScoreboardRepository();
-        this.gameRoom = new GameRoom(scoreboard);
+        this.leaderboard = new LeaderboardCache(scoreboard);
+        this.scoreboardWriter = new ScoreboardWriter(scoreboard, leaderboard);
+        this.rooms = new RoomManager(scoreboardWriter, leaderboard, config);
     }
 
     public void start() {
         try {
-            serverSocket = new ServerSocket(PORT);
-
-            while (!Thread.currentThread().isInterrupted()) {
-                Socket clientSocket = serverSocket.accept();
-
-                ClientHandler handler = new ClientHandler(clientSocket, gameRoom);
-                clientThreads.submit(handler);
+            if (config.getUdpPort() > 0) {
+                udp = new UdpTransport(config);
+                Thread udpThread = new Thread(udp, "udp-io");
+                udpThread.setDaemon(true);
+                udpThread.start();
             }
+            if (config.getGateway() != null) {
+                gatewayReporter = new GatewayReporter(config, rooms);
+                Thread reporterThread = new Thread(gatewayReporter, "gateway-report");
+                reporterThread.setDaemon(true);
+                reporterThread.start();
+            }
+            engine = createEngine();
+            System.out.println("[SERVER] Запуск: " + config);
+            if (config.getSendRate() > config.getTickRate() || config.getSpectatorRate() > config.getTickRate()) {
+                System.err.println("[SERVER][WARN] Частота рассылки выше tick-rate=" + config.getTickRate()
+                        + ": снимки уходят не чаще одного за тик");
+            }
+            engine.start();
         } catch (IOException e) {
             if (!Thread.currentThread().isInterrupted()) {
                 System.err.println("Ошибка сервера: " + e.getMessage());
@@ -39,23 +59,39 @@ public class GameServer {
         }
     }
 
+    private ServerEngine createEngine() throws IOException {
+        switch (config.getEngine()) {
+            case NIO:
+                return new NioServerEngine(config, rooms, udp);
+            case BLOCKING:
+            default:
+                return new BlockingServerEngine(config, rooms, udp);
+        }
+    }
+
     public void stop() {
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-            clientThreads.shutdownNow();
-        } catch (IOException e) {
-            System.err.println("Ошибка при остановке сервера: " + e.getMessage());
+        if (engine != null) {
+            engine.stop();
+        }
+        if (udp != null) {
+            udp.stop();
+        }
+        if (gatewayReporter != null) {
+            gatewayReporter.stop();
         }
+        rooms.close();
+        scoreboardWriter.close();
+        scoreboard.close();
     }
 
     public static void main(String[] args) {
-        GameServer server = new GameServer();
+        // Например: --engine=nio --io-threads=4 или --threads=virtual;
+        // за шлюзом: --port=5601 --udp-port=5701 --gateway=127.0.0.1:5550
+        GameServer server = new GameServer(ServerConfig.fromArgs(args));
 
         // Обработка завершения по Ctrl+C
         Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
 
         server.start();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package server;
+
+import gateway.NodeReport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Раз в секунду сообщает шлюзу нагрузку этого узла (см. gateway.GatewayServer).
+ * Пока шлюз недоступен, переподключается; сам узел при этом продолжает
+ * принимать клиентов напрямую.
+ */
+public class GatewayReporter implements Runnable {
+    private static final long REPORT_INTERVAL_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+
+    private final ServerConfig config;
+    private final RoomManager rooms;
+    private final InetSocketAddress gateway;
+    private volatile boolean running = true;
+    private Socket socket;
+    private OutputStream out;
+
+    public GatewayReporter(ServerConfig config, RoomManager rooms) {
+        this.config = config;
+        this.rooms = rooms;
+        String address = config.getGateway();
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Ожидается --gateway=host:port: " + address);
+        }
+        this.gateway = new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    @Override
+    public void run() {
+        boolean warned = false;
+        while (running) {
+            try {
+                if (socket == null) {
+                    connect();
+                    warned = false;
+                    System.out.println("[SERVER] Узел зарегистрирован на шлюзе " + config.getGateway());
+                }
+                out.write((buildReport().toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                if (!warned && running) {
+                    System.err.println("[SERVER][WARN] Шлюз " + config.getGateway() + " недоступен: " + e.getMessage());
+                    warned = true;
+                }
+                closeSocket();
+            }
+            try {
+                Thread.sleep(REPORT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        closeSocket();
+    }
+
+    private void connect() throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(gateway, CONNECT_TIMEOUT_MS);
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+    }
+
+    private NodeReport buildReport() {
+        NodeReport report = new NodeReport();
+        report.setHost(config.getAdvertiseHost());
+        report.setPort(config.getPort());
+        report.setRooms(rooms.getRoomCount());
+        report.setMaxRooms(config.getMaxRooms());
+        report.setPlayers(rooms.getPlayerCount());
+        report.setQueued(rooms.getQueuedCount());
+        return report;
+    }
+
+    private void closeSocket() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка при закрытии канала шлюза: " + e.getMessage());
+            }
+            socket = null;
+            out = null;
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
@@ -0,0 +1,88 @@
+package server;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Команды ввода одного игрока, принятые сетью и еще не примененные тиком.
+ * Клиент повторяет последние команды в каждой пачке, поэтому повторы
+ * отбрасываются по номеру.
+ *
+ * Применение ограничено кредитом: каждый тик добавляет inputRate / tickRate
+ * команд, каждая примененная команда тратит одну. Кредит копится не больше
+ * maxCredit, чтобы догнать пачку, пришедшую с опозданием, но за любой
+ * отрезок времени применяется не больше inputRate команд в секунду
+ * (плюс этот небольшой запас), как бы часто клиент их ни слал.
+ * Используется только из потока цикла комнаты.
+ */
+class InputQueue {
+    private final int[] seqs;
+    private final byte[] directions;
+    private int head = 0;
+    private int size = 0;
+    private int lastReceivedSeq = 0;
+    private int lastAppliedSeq = 0;
+    private final double creditPerTick;
+    private final double maxCredit;
+    private double credit = 0;
+
+    InputQueue(int capacity, double creditPerTick, double maxCredit) {
+        this.seqs = new int[capacity];
+        this.directions = new byte[capacity];
+        this.creditPerTick = creditPerTick;
+        this.maxCredit = maxCredit;
+    }
+
+    /**
+     * Принять пачку: inputs[inputs.length - 1] имеет номер lastSeq, предыдущие - на 1 меньше.
+     */
+    void offer(int lastSeq, byte[] inputs) {
+        int firstSeq = lastSeq - inputs.length + 1;
+        for (int i = 0; i < inputs.length; i++) {
+            int seq = firstSeq + i;
+            if (seq - lastReceivedSeq <= 0) {
+                continue; // уже получена в прошлой пачке
+            }
+            if (size == seqs.length) {
+                // Переполнение: самая старая команда теряется
+                head = (head + 1) % seqs.length;
+                size--;
+            }
+            int tail = (head + size) % seqs.length;
+            seqs[tail] = seq;
+            directions[tail] = inputs[i];
+            size++;
+            lastReceivedSeq = seq;
+        }
+    }
+
+    /**
+     * Начислить кредит этого тика и применить столько команд, сколько он позволяет.
+     * Вызывается раз в тик. Возвращает, сколько применено.
+     */
+    int drain(IntConsumer apply) {
+        credit = Math.min(maxCredit, credit + creditPerTick);
+        int applied = 0;
+        while (size > 0 && credit >= 1) {
+            credit--;
+            apply.accept(directions[head]);
+            lastAppliedSeq = seqs[head];
+            head = (head + 1) % seqs.length;
+            size--;
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Выбросить ожидающие команды; для клиента они считаются обработанными.
+     */
+    void clear() {
+        head = 0;
+        size = 0;
+        lastAppliedSeq = lastReceivedSeq;
+    }
+
+    int getLastAppliedSeq() {
+        return lastAppliedSeq;
+    }
+}
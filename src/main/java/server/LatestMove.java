@@ -0,0 +1,57 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Последний MOVE игрока, еще не забранный тиком комнаты. Сетевой поток только
+ * заменяет значение: x и y как float упакованы в один long, поэтому запись -
+ * один getAndSet без выделения памяти. Тик забирает значение раз в тик;
+ * все MOVE, пришедшие между двумя тиками, кроме последнего, выбрасываются,
+ * не доходя до комнаты, и считаются схлопнутыми.
+ */
+final class LatestMove {
+    // Оба float - NaN; такие координаты клиент не передает (см. offer)
+    static final long NONE = -1L;
+
+    private final AtomicLong latest = new AtomicLong(NONE);
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Записать координаты из MOVE. Вызывается из сетевых потоков (TCP и UDP).
+     */
+    void offer(double x, double y) {
+        if (!Double.isFinite(x) || !Double.isFinite(y)) {
+            return;
+        }
+        received.incrementAndGet();
+        long packed = ((long) Float.floatToIntBits((float) x) << 32) | (Float.floatToIntBits((float) y) & 0xFFFFFFFFL);
+        if (latest.getAndSet(packed) != NONE) {
+            coalesced.incrementAndGet(); // предыдущий так и не дошел до тика
+        }
+    }
+
+    /**
+     * Забрать последний MOVE или NONE. Вызывается из тика комнаты.
+     */
+    long take() {
+        // Чтение дешевле обмена, а стоящих игроков в тике большинство
+        return latest.get() == NONE ? NONE : latest.getAndSet(NONE);
+    }
+
+    static double x(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    static double y(long packed) {
+        return Float.intBitsToFloat((int) packed);
+    }
+
+    long getReceived() {
+        return received.get();
+    }
+
+    long getCoalesced() {
+        return coalesced.get();
+    }
+}
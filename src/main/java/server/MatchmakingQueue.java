@@ -0,0 +1,147 @@
+package server;
+
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Игроки, которые прислали CONNECT и еще не попали в комнату. RoomManager
+ * разбирает очередь пачками: целая пачка сразу получает новую комнату,
+ * неполная - по истечении ожидания. Пока игрок ждет, ему идет QUEUE_STATUS
+ * с местом в очереди и оценкой ожидания.
+ * Используется под блокировкой RoomManager.
+ */
+class MatchmakingQueue {
+    private static final long STATUS_INTERVAL_NANOS = 1_000_000_000L;
+
+    /**
+     * Ожидающий игрок и его соединение.
+     */
+    static final class Entry {
+        final ClientConnection client;
+        final Player player;
+        final long since;
+        private int lastPosition = 0;
+        private long lastStatusAt = 0;
+
+        Entry(ClientConnection client, Player player, long since) {
+            this.client = client;
+            this.player = player;
+            this.since = since;
+        }
+    }
+
+    private final ArrayDeque<Entry> waiting = new ArrayDeque<>();
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final int capacity;
+    // Сглаженная скорость выхода из очереди. Игроки уходят рывками (по концу матчей),
+    // поэтому скорость меряется между рывками, а не по каждому проходу
+    private double placedPerSecond = 0;
+    private long lastPlacementAt = 0;
+    private int placedSinceLastPass = 0;
+
+    MatchmakingQueue(int batchSize, long maxWaitMs, int capacity) {
+        this.batchSize = batchSize;
+        this.maxWaitNanos = maxWaitMs * 1_000_000L;
+        this.capacity = capacity;
+    }
+
+    boolean offer(ClientConnection client, Player player, long now) {
+        if (waiting.size() >= capacity) {
+            return false;
+        }
+        waiting.addLast(new Entry(client, player, now));
+        return true;
+    }
+
+    // Вернуть в голову очереди игроков, чья комната начала матч раньше, чем они в нее вошли
+    void requeue(List<Entry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            waiting.addFirst(entries.get(i));
+        }
+    }
+
+    void remove(ClientConnection client) {
+        waiting.removeIf(entry -> entry.client == client);
+    }
+
+    Entry poll() {
+        Entry entry = waiting.pollFirst();
+        if (entry != null) {
+            placedSinceLastPass++;
+        }
+        return entry;
+    }
+
+    boolean isEmpty() {
+        return waiting.isEmpty();
+    }
+
+    int size() {
+        return waiting.size();
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    boolean headWaitedTooLong(long now) {
+        Entry head = waiting.peekFirst();
+        return head != null && now - head.since >= maxWaitNanos;
+    }
+
+    /**
+     * Разослать QUEUE_STATUS тем, чье место изменилось или кто давно не получал статус.
+     * roomsAvailable - можно ли сейчас создать новую комнату.
+     */
+    void sendStatuses(long now, boolean roomsAvailable) {
+        if (placedSinceLastPass > 0) {
+            if (lastPlacementAt != 0 && now > lastPlacementAt) {
+                double rate = placedSinceLastPass / ((now - lastPlacementAt) / 1e9);
+                placedPerSecond = placedPerSecond == 0 ? rate : placedPerSecond + (rate - placedPerSecond) * 0.3;
+            }
+            lastPlacementAt = now;
+            placedSinceLastPass = 0;
+        }
+
+        int position = 0;
+        Iterator<Entry> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            position++;
+            if (entry.lastPosition == position && now - entry.lastStatusAt < STATUS_INTERVAL_NANOS) {
+                continue;
+            }
+            entry.lastPosition = position;
+            entry.lastStatusAt = now;
+
+            Message status = new Message(MessageTypes.QUEUE_STATUS);
+            status.setQueuePosition(position);
+            status.setQueueSize(waiting.size());
+            status.setQueueEta(estimateWait(position, now, roomsAvailable));
+            entry.client.sendMessage(status);
+        }
+    }
+
+    private double estimateWait(int position, long now, boolean roomsAvailable) {
+        if (roomsAvailable) {
+            // Целые пачки уходят сразу, неполная - когда голова дождется таймаута
+            int batchesAhead = (position - 1) / batchSize;
+            if (waiting.size() >= (batchesAhead + 1) * batchSize) {
+                return 0;
+            }
+            long headLeft = Math.max(0, maxWaitNanos - (now - waiting.peekFirst().since));
+            return (headLeft + batchesAhead * maxWaitNanos) / 1e9;
+        }
+        // Все комнаты заняты: места освобождаются с концом матчей
+        if (placedPerSecond <= 0) {
+            return -1;
+        }
+        return Math.max(0, position / placedPerSecond - (now - lastPlacementAt) / 1e9);
+    }
+}
@@ -0,0 +1,138 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограниченная очередь исходящих кадров одного клиента.
+ * Управляющие сообщения доставляются все и по порядку, а из GAME_STATE
+ * в очереди хранится только самый свежий неотправленный.
+ * Потоки комнаты только кладут кадры сюда и никогда не ждут сеть.
+ */
+public class OutboundQueue {
+
+    private static class Frame {
+        final byte[] bytes;
+
+        Frame(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final int maxBytes;
+    private final long maxAgeNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private Frame pendingState; // последний неотправленный GAME_STATE
+    private int queuedBytes = 0;
+    private long lastProgressAt; // когда писатель последний раз забрал кадр (или очередь стала непустой)
+    private long coalesced = 0;
+    private boolean closed = false;
+
+    public OutboundQueue(int maxBytes, long maxAgeMillis) {
+        this.maxBytes = maxBytes;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    /**
+     * Положить кадр в очередь.
+     *
+     * @param coalesce true для GAME_STATE: предыдущий неотправленный снимок выбрасывается
+     * @return false, если клиент не укладывается в бюджет: очередь больше maxBytes
+     *         или писатель не забирал кадры дольше maxAge
+     */
+    public boolean offer(byte[] bytes, boolean coalesce) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            long now = System.nanoTime();
+            if (frames.isEmpty()) {
+                lastProgressAt = now;
+            }
+            Frame frame = new Frame(bytes);
+            if (coalesce) {
+                // Старый снимок обычно у хвоста очереди, поиск с конца почти бесплатный
+                if (pendingState != null && frames.removeLastOccurrence(pendingState)) {
+                    queuedBytes -= pendingState.bytes.length;
+                    coalesced++;
+                }
+                pendingState = frame;
+            }
+            frames.addLast(frame);
+            queuedBytes += bytes.length;
+
+            return queuedBytes <= maxBytes && now - lastProgressAt <= maxAgeNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Следующий кадр без ожидания или null, если очередь пуста.
+     */
+    public byte[] poll() {
+        lock.lock();
+        try {
+            return nextFrame();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return queuedBytes == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            frames.clear();
+            pendingState = null;
+            queuedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вызывать под lock
+    private byte[] nextFrame() {
+        Frame frame = frames.pollFirst();
+        if (frame == null) {
+            return null;
+        }
+        if (frame == pendingState) {
+            pendingState = null;
+        }
+        queuedBytes -= frame.bytes.length;
+        lastProgressAt = System.nanoTime();
+        return frame.bytes;
+    }
+}
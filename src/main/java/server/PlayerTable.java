@@ -0,0 +1,231 @@
+package server;
+
+import common.BinaryCodec;
+import common.GameSettings;
+import common.PlayerColumns;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Игроки комнаты в виде параллельных массивов по слотам (structure of arrays):
+ * координаты, признак "жив", номер последней команды и имя лежат каждый
+ * в своем плотном массиве. Проходы по всем игрокам (ввод, итог раунда, снимок)
+ * идут по примитивам подряд, без объекта Player на каждого.
+ *
+ * Используется только из цикла комнаты. Исключение - итог раунда в большой
+ * комнате: он считается в ForkJoinPool, но каждая задача пишет только свой
+ * диапазон слотов, а поток комнаты ждет окончания всех задач.
+ */
+public final class PlayerTable {
+    // Слотов на одну задачу параллельного итога раунда
+    private static final int CHUNK = 2048;
+
+    private final String[] names; // null - слот свободен
+    private final double[] x;
+    private final double[] y;
+    private final boolean[] alive;
+    private final boolean[] eliminated; // выбыл в последнем итоге раунда
+    private final int[] lastInputSeq;
+    private final int parallelThreshold;
+    private int count = 0;
+    private int freeHint = 1; // ниже этого слота свободных нет
+
+    /**
+     * maxPlayers - число слотов (слот 0 не используется);
+     * parallelThreshold - с какого числа игроков итог раунда считается параллельно.
+     */
+    public PlayerTable(int maxPlayers, int parallelThreshold) {
+        int slots = maxPlayers + 1;
+        this.names = new String[slots];
+        this.x = new double[slots];
+        this.y = new double[slots];
+        this.alive = new boolean[slots];
+        this.eliminated = new boolean[slots];
+        this.lastInputSeq = new int[slots];
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Занять свободный слот под нового живого игрока. Мест в комнате
+     * не больше, чем слотов (см. GameRoom.reserveSeat), поэтому слот есть всегда.
+     */
+    public int add(String name, double px, double py) {
+        for (int slot = freeHint; slot < names.length; slot++) {
+            if (names[slot] == null) {
+                names[slot] = name;
+                x[slot] = px;
+                y[slot] = py;
+                alive[slot] = true;
+                eliminated[slot] = false;
+                lastInputSeq[slot] = 0;
+                count++;
+                freeHint = slot + 1;
+                return slot;
+            }
+        }
+        throw new IllegalStateException("Нет свободного слота: занято " + count + " из " + (names.length - 1));
+    }
+
+    public void remove(int slot) {
+        names[slot] = null;
+        alive[slot] = false;
+        eliminated[slot] = false;
+        count--;
+        freeHint = Math.min(freeHint, slot);
+    }
+
+    /**
+     * Итог раунда: живые игроки, стоящие не на клетке цвета targetColor
+     * (индекс в GameSettings.ROUND_COLORS), выбывают. Выбывших отмечает
+     * isEliminated до следующего итога. Возвращает число выживших.
+     */
+    public int evaluateRound(byte[] field, int targetColor) {
+        if (count >= parallelThreshold && names.length > CHUNK) {
+            ForkJoinPool.commonPool().invoke(new EvaluateTask(field, targetColor, 1, names.length));
+        } else {
+            evaluateRange(field, targetColor, 1, names.length);
+        }
+        int survivors = 0;
+        for (int slot = 1; slot < alive.length; slot++) {
+            if (alive[slot]) {
+                survivors++;
+            }
+        }
+        return survivors;
+    }
+
+    private void evaluateRange(byte[] field, int targetColor, int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            boolean lost = alive[slot] && field[cellIndex(x[slot], y[slot])] != targetColor;
+            eliminated[slot] = lost;
+            if (lost) {
+                alive[slot] = false;
+            }
+        }
+    }
+
+    // Пополам, пока диапазон больше CHUNK; задачи пишут непересекающиеся слоты.
+    // RecursiveAction сериализуем, но задача живет только внутри evaluateRound
+    @SuppressWarnings("serial")
+    private final class EvaluateTask extends RecursiveAction {
+        private final byte[] field;
+        private final int targetColor;
+        private final int from;
+        private final int to;
+
+        EvaluateTask(byte[] field, int targetColor, int from, int to) {
+            this.field = field;
+            this.targetColor = targetColor;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                evaluateRange(field, targetColor, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EvaluateTask(field, targetColor, from, middle),
+                    new EvaluateTask(field, targetColor, middle, to));
+        }
+    }
+
+    // Клетка поля под точкой; точки за краем прижимаются к крайним клеткам
+    static int cellIndex(double px, double py) {
+        int gx = (int) (px / GameSettings.CELL_SIZE);
+        int gy = (int) (py / GameSettings.CELL_SIZE);
+        gx = Math.max(0, Math.min(gx, GameSettings.GRID_W - 1));
+        gy = Math.max(0, Math.min(gy, GameSettings.GRID_H - 1));
+        return gy * GameSettings.GRID_W + gx;
+    }
+
+    /**
+     * Копия занятых слотов в виде массивов (для снимка комнаты): кодеки пишут
+     * игроков прямо из них, объекты Player не создаются.
+     */
+    public PlayerColumns toColumns() {
+        int[] ids = new int[count];
+        String[] playerNames = new String[count];
+        double[] px = new double[count];
+        double[] py = new double[count];
+        boolean[] playerAlive = new boolean[count];
+        int[] inputSeq = new int[count];
+        int i = 0;
+        for (int slot = 1; slot < names.length && i < count; slot++) {
+            if (names[slot] != null) {
+                ids[i] = slot;
+                playerNames[i] = names[slot];
+                px[i] = x[slot];
+                py[i] = y[slot];
+                playerAlive[i] = alive[slot];
+                inputSeq[i] = lastInputSeq[slot];
+                i++;
+            }
+        }
+        return new PlayerColumns(i, ids, playerNames, px, py, playerAlive, inputSeq);
+    }
+
+    // Квантованные координаты: то же, что увидит клиент после декодирования
+    int quantizedX(int slot) {
+        return BinaryCodec.quantize(x[slot]);
+    }
+
+    int quantizedY(int slot) {
+        return BinaryCodec.quantize(y[slot]);
+    }
+
+    public int getSlotCount() {
+        return names.length;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isOccupied(int slot) {
+        return names[slot] != null;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public double getX(int slot) {
+        return x[slot];
+    }
+
+    public void setX(int slot, double value) {
+        x[slot] = value;
+    }
+
+    public double getY(int slot) {
+        return y[slot];
+    }
+
+    public void setY(int slot, double value) {
+        y[slot] = value;
+    }
+
+    public boolean isAlive(int slot) {
+        return alive[slot];
+    }
+
+    public void setAlive(int slot, boolean value) {
+        alive[slot] = value;
+    }
+
+    public boolean isEliminated(int slot) {
+        return eliminated[slot];
+    }
+
+    public int getLastInputSeq(int slot) {
+        return lastInputSeq[slot];
+    }
+
+    public void setLastInputSeq(int slot, int seq) {
+        lastInputSeq[slot] = seq;
+    }
+}
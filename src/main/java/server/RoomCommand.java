@@ -0,0 +1,132 @@
+package server;
+
+import java.util.List;
+
+/**
+ * Неизменяемая команда комнате. Сетевые потоки и подбор не трогают состояние
+ * комнаты, а кладут команду в ее RoomMailbox; тик в начале выполняет
+ * накопившиеся команды по порядку поступления. Вся комната меняется одним
+ * потоком, а последовательность команд по тикам однозначно задает ее ход.
+ */
+abstract class RoomCommand {
+
+    abstract void apply(GameRoom room);
+
+    /**
+     * Игроки из очереди подбора на занятые для них места.
+     */
+    static final class Join extends RoomCommand {
+        final List<MatchmakingQueue.Entry> entries;
+        final RoomManager rooms;
+
+        Join(List<MatchmakingQueue.Entry> entries, RoomManager rooms) {
+            this.entries = List.copyOf(entries);
+            this.rooms = rooms;
+        }
+
+        @Override
+        void apply(GameRoom room) {
+            room.applyJoin(entries, rooms);
+        }
+    }
+
+    /**
+     * Соединение закрылось: игрок покидает матч.
+     */
+    static final class Leave extends RoomCommand {
+        final ClientConnection client;
+
+        Leave(ClientConnection client) {
+            this.client = client;
+        }
+
+        @Override
+        void apply(GameRoom room) {
+            room.applyLeave(client);
+        }
+    }
+
+    /**
+     * Соединение больше не получает рассылку комнаты.
+     */
+    static final class Unsubscribe extends RoomCommand {
+        final ClientConnection client;
+
+        Unsubscribe(ClientConnection client) {
+            this.client = client;
+        }
+
+        @Override
+        void apply(GameRoom room) {
+            room.applyUnsubscribe(client);
+        }
+    }
+
+    /**
+     * Пачка команд ввода; массив направлений принадлежит команде.
+     */
+    static final class Input extends RoomCommand {
+        final ClientConnection client;
+        final int lastSeq;
+        final byte[] directions;
+
+        Input(ClientConnection client, int lastSeq, byte[] directions) {
+            this.client = client;
+            this.lastSeq = lastSeq;
+            this.directions = directions;
+        }
+
+        @Override
+        void apply(GameRoom room) {
+            room.applyInput(client, lastSeq, directions);
+        }
+    }
+
+    /**
+     * Выбывший игрок переходит в наблюдатели.
+     */
+    static final class Spectate extends RoomCommand {
+        final ClientConnection client;
+
+        Spectate(ClientConnection client) {
+            this.client = client;
+        }
+
+        @Override
+        void apply(GameRoom room) {
+            room.applySpectate(client);
+        }
+    }
+
+    /**
+     * Зритель без игрока подключается к идущему матчу.
+     */
+    static final class Watch extends RoomCommand {
+        final ClientConnection client;
+
+        Watch(ClientConnection client) {
+            this.client = client;
+        }
+
+        @Override
+        void apply(GameRoom room) {
+            room.applyWatch(client);
+        }
+    }
+
+    /**
+     * Клиенту нужно полное состояние с полем.
+     */
+    static final class Resync extends RoomCommand {
+        final ClientConnection client;
+
+        Resync(ClientConnection client) {
+            this.client = client;
+        }
+
+        @Override
+        void apply(GameRoom room) {
+            room.sendFullState(client);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Однопоточный цикл событий, на котором живут несколько комнат.
+ * Все, что меняет состояние комнаты (тик, вход и выход игроков, ввод,
+ * рассылка), выполняется в его потоке, поэтому комнатам не нужны блокировки:
+ * входящие события комната получает через свой RoomMailbox и разбирает в тике.
+ */
+final class RoomLoop {
+    private final int index;
+    private final ScheduledExecutorService executor;
+    private int rooms = 0; // под блокировкой RoomManager
+
+    RoomLoop(int index) {
+        this.index = index;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "room-loop-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodNanos) {
+        return executor.scheduleAtFixedRate(task, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getRooms() {
+        return rooms;
+    }
+
+    void setRooms(int rooms) {
+        this.rooms = rooms;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void awaitTermination(long timeoutMs) {
+        try {
+            executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Входящие команды одной комнаты: много писателей (сетевые потоки, подбор),
+ * один читатель (тик комнаты). Очередь без блокировок: писатель делает один
+ * getAndSet хвоста и связывает узел, читатель идет по ссылкам от головы.
+ *
+ * Писатель, успевший сдвинуть хвост, но еще не связавший узел, на мгновение
+ * разрывает цепочку; читатель тогда останавливается и дочитает на следующем тике.
+ */
+final class RoomMailbox {
+    private static final class Node {
+        RoomCommand command;
+        volatile Node next;
+
+        Node(RoomCommand command) {
+            this.command = command;
+        }
+    }
+
+    private final AtomicReference<Node> tail;
+    private Node head; // пустой узел перед первой командой; только для читателя
+
+    RoomMailbox() {
+        Node stub = new Node(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Поставить команду. Вызывается из любого потока, не блокируется.
+     */
+    void post(RoomCommand command) {
+        Node node = new Node(command);
+        Node previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Выполнить команды, поставленные до начала вызова; пришедшие во время
+     * разбора останутся до следующего раза. Только из потока комнаты.
+     * Возвращает число выполненных команд.
+     */
+    int drain(Consumer<RoomCommand> handler) {
+        Node last = tail.get();
+        int count = 0;
+        while (head != last) {
+            Node next = head.next;
+            if (next == null) {
+                break; // писатель еще не связал узел
+            }
+            RoomCommand command = next.command;
+            next.command = null; // узел становится новым пустым, команда не держится в памяти
+            head = next;
+            handler.accept(command);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,266 @@
+package server;
+
+import common.Player;
+import server.db.LeaderboardCache;
+import server.db.ScoreboardWriter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Комнаты сервера. Новые игроки ждут в очереди подбора (MatchmakingQueue)
+ * и попадают в комнаты пачками: в открытые, где матч еще не начался,
+ * или во вновь созданные. Опустевшие комнаты периодически закрываются.
+ *
+ * Комнаты распределены по фиксированному набору однопоточных циклов
+ * (RoomLoop, по умолчанию по числу ядер); новая комната садится
+ * на цикл, где комнат меньше всего. Подбор и закрытие пустых комнат
+ * идут в отдельном потоке обслуживания и не отнимают время у тиков.
+ *
+ * Очередь и список комнат под ReentrantLock, а не synchronized: в JDK 21
+ * виртуальный поток, ждущий монитор, не отпускает носитель, и пачка CONNECT
+ * при --threads=virtual занимала все носители, пока поток обслуживания
+ * под монитором ждал System.out у виртуального потока без носителя.
+ */
+public class RoomManager {
+    private static final long IDLE_CHECK_SECONDS = 5;
+    private static final long MATCHMAKING_INTERVAL_MS = 200;
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+
+    private final ScoreboardWriter scoreboard;
+    private final LeaderboardCache leaderboard;
+    private final ServerConfig config;
+    private final RoomLoop[] loops;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<GameRoom> rooms = new ArrayList<>(); // под lock
+    private final MatchmakingQueue queue; // под lock
+    private final ScheduledExecutorService housekeeping;
+    private int nextRoomId = 1;
+
+    public RoomManager(ScoreboardWriter scoreboard, LeaderboardCache leaderboard, ServerConfig config) {
+        this.scoreboard = scoreboard;
+        this.leaderboard = leaderboard;
+        this.config = config;
+        this.loops = new RoomLoop[config.getRoomLoops()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new RoomLoop(i);
+        }
+        this.queue = new MatchmakingQueue(config.getMatchSize(), config.getMatchWaitMs(), config.getQueueCapacity());
+        this.housekeeping = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "room-housekeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleWithFixedDelay(this::closeIdleRooms, IDLE_CHECK_SECONDS, TimeUnit.SECONDS);
+        scheduleWithFixedDelay(this::matchmake, MATCHMAKING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleWithFixedDelay(Runnable task, long delay, TimeUnit unit) {
+        housekeeping.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.err.println("[ROOMS][ERROR] Ошибка в периодической задаче: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }, delay, delay, unit);
+    }
+
+    /**
+     * Поставить игрока в очередь подбора. Ответ приходит соединению асинхронно:
+     * onJoined из цикла комнаты или onJoinRejected, если очередь переполнена.
+     */
+    public void join(ClientConnection client, Player player) {
+        boolean queued;
+        lock.lock();
+        try {
+            queued = queue.offer(client, player, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+        if (!queued) {
+            client.onJoinRejected("Сервер перегружен, попробуйте позже");
+        }
+    }
+
+    /**
+     * Подключить зрителя к самому многолюдному из идущих матчей.
+     */
+    public void watch(ClientConnection client) {
+        GameRoom best = null;
+        lock.lock();
+        try {
+            for (GameRoom room : rooms) {
+                if (room.isMatchRunning() && (best == null || room.getClientCount() > best.getClientCount())) {
+                    best = room;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (best == null) {
+            client.onJoinRejected("Сейчас нет идущих матчей");
+            return;
+        }
+        best.watch(client);
+    }
+
+    void requeue(List<MatchmakingQueue.Entry> entries) {
+        lock.lock();
+        try {
+            queue.requeue(entries);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Соединение закрылось, не дождавшись комнаты.
+     */
+    public void leave(ClientConnection client) {
+        lock.lock();
+        try {
+            queue.remove(client);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Один проход подбора. Сначала добираются комнаты, где матч еще не начался:
+     * там уже кто-то ждет. Затем целые пачки получают новые комнаты, а неполная -
+     * только когда ее голова ждет дольше --match-wait-ms.
+     */
+    private void matchmake() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (GameRoom room : rooms) {
+                List<MatchmakingQueue.Entry> batch = new ArrayList<>();
+                while (!queue.isEmpty() && room.reserveSeat()) {
+                    batch.add(queue.poll());
+                }
+                if (!batch.isEmpty()) {
+                    room.join(batch, this);
+                }
+            }
+
+            int batchSize = Math.min(queue.getBatchSize(), config.getMaxPlayersPerRoom());
+            while (queue.size() >= batchSize && rooms.size() < config.getMaxRooms()) {
+                formRoom(batchSize);
+            }
+            if (queue.headWaitedTooLong(now) && rooms.size() < config.getMaxRooms()) {
+                formRoom(queue.size());
+            }
+
+            queue.sendStatuses(now, rooms.size() < config.getMaxRooms());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Новая комната сразу на count игроков из головы очереди, одной задачей ее цикла
+    private void formRoom(int count) {
+        RoomLoop loop = leastLoadedLoop();
+        GameRoom room = new GameRoom(nextRoomId++, scoreboard, loop, config);
+        loop.setRooms(loop.getRooms() + 1);
+        rooms.add(room);
+
+        List<MatchmakingQueue.Entry> batch = new ArrayList<>(count);
+        while (batch.size() < count && room.reserveSeat()) {
+            batch.add(queue.poll());
+        }
+        room.join(batch, this);
+        System.out.println("[ROOMS] Создана комната " + room.getId() + " в цикле " + loop.getIndex() +
+                " на " + batch.size() + " игроков. Всего комнат: " + rooms.size() + ", в очереди: " + queue.size());
+    }
+
+    private RoomLoop leastLoadedLoop() {
+        RoomLoop best = loops[0];
+        for (RoomLoop loop : loops) {
+            if (loop.getRooms() < best.getRooms()) {
+                best = loop;
+            }
+        }
+        return best;
+    }
+
+    private void closeIdleRooms() {
+        lock.lock();
+        try {
+            Iterator<GameRoom> iterator = rooms.iterator();
+            while (iterator.hasNext()) {
+                GameRoom room = iterator.next();
+                if (room.isIdle()) {
+                    room.close();
+                    iterator.remove();
+                    room.getLoop().setRooms(room.getLoop().getRooms() - 1);
+                    System.out.println("[ROOMS] Закрыта пустая комната " + room.getId() + ". Всего комнат: " + rooms.size());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Таблица рекордов общая для всех комнат; запросы к ней идут мимо комнат
+    public LeaderboardCache getLeaderboard() {
+        return leaderboard;
+    }
+
+    public int getRoomCount() {
+        lock.lock();
+        try {
+            return rooms.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPlayerCount() {
+        lock.lock();
+        try {
+            int players = 0;
+            for (GameRoom room : rooms) {
+                players += room.getClientCount();
+            }
+            return players;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        housekeeping.shutdownNow();
+        lock.lock();
+        try {
+            for (GameRoom room : rooms) {
+                room.close();
+            }
+            rooms.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (RoomLoop loop : loops) {
+            loop.shutdown();
+        }
+        // Дать доработать текущим тикам: их результаты должны попасть в рейтинг
+        for (RoomLoop loop : loops) {
+            loop.awaitTermination(CLOSE_TIMEOUT_MS);
+        }
+    }
+}
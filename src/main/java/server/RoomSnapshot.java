@@ -0,0 +1,130 @@
+package server;
+
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import common.PlayerColumns;
+
+import java.util.List;
+
+/**
+ * Неизменяемый снимок комнаты на конец тика. Комната собирает его не чаще
+ * раза в тик и только если что-то поменялось, и публикует через AtomicReference;
+ * рассылки, наблюдатели и мониторинг читают опубликованный снимок без блокировок
+ * и без копирования, сколько бы их ни было.
+ *
+ * Игроки хранятся копией примитивов (PlayerColumns), а не объектами Player:
+ * их нельзя поменять через снимок, а рассылки кодируют их прямо из массивов.
+ * Если с прошлого снимка изменились только таймеры, новый снимок разделяет
+ * игроков со старым. Массив поля тоже общий: комната не меняет поле,
+ * а генерирует новое.
+ */
+public final class RoomSnapshot {
+    private final int roomId;
+    private final long tick;
+    private final int round;
+    private final String targetColor;
+    private final double timeLeft;
+    private final double duration;
+    private final boolean gameStarted;
+    private final boolean roundActive;
+    private final double matchStartCountdown;
+    private final byte[] field;
+    private final int fieldVersion;
+    private final PlayerColumns players;
+
+    RoomSnapshot(int roomId, long tick, int round, String targetColor, double timeLeft, double duration,
+                 boolean gameStarted, boolean roundActive, double matchStartCountdown,
+                 byte[] field, int fieldVersion, PlayerColumns players) {
+        this.roomId = roomId;
+        this.tick = tick;
+        this.round = round;
+        this.targetColor = targetColor;
+        this.timeLeft = timeLeft;
+        this.duration = duration;
+        this.gameStarted = gameStarted;
+        this.roundActive = roundActive;
+        this.matchStartCountdown = matchStartCountdown;
+        this.field = field;
+        this.fieldVersion = fieldVersion;
+        this.players = players;
+    }
+
+    /**
+     * GAME_STATE по этому снимку, без номера снимка (его ставит рассылка).
+     * Поле прикладывается, только если клиенту нужно его перерисовать.
+     */
+    Message toGameState(boolean withField, boolean withPlayers) {
+        Message msg = new Message(MessageTypes.GAME_STATE);
+        msg.setRound(round);
+        msg.setTargetColor(targetColor);
+        msg.setTimeLeft(timeLeft);
+        msg.setDuration(duration);
+        msg.setGameStarted(gameStarted);
+        msg.setIsRoundActive(roundActive);
+        msg.setMatchStartCountdown(matchStartCountdown);
+        msg.setFieldVersion(fieldVersion);
+        if (withField) {
+            msg.setField(field);
+        }
+        if (withPlayers) {
+            msg.setPlayers(players);
+        }
+        return msg;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public String getTargetColor() {
+        return targetColor;
+    }
+
+    public double getTimeLeft() {
+        return timeLeft;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public boolean isGameStarted() {
+        return gameStarted;
+    }
+
+    public boolean isRoundActive() {
+        return roundActive;
+    }
+
+    public double getMatchStartCountdown() {
+        return matchStartCountdown;
+    }
+
+    public int getFieldVersion() {
+        return fieldVersion;
+    }
+
+    // Неизменяемый список; get() каждый раз собирает новый Player из копии в снимке
+    public List<Player> getPlayers() {
+        return players;
+    }
+
+    public int getAliveCount() {
+        int alive = 0;
+        for (int i = 0; i < players.size(); i++) {
+            if (players.isAlive(i)) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+}
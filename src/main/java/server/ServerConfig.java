@@ -0,0 +1,308 @@
+package server;
+
+import common.GameSettings;
+
+/**
+ * Параметры запуска сервера. Задаются аргументами вида --ключ=значение.
+ */
+public class ServerConfig {
+
+    public enum Engine {
+        BLOCKING, // поток на соединение (ServerSocket + ClientHandler)
+        NIO       // Selector + небольшой пул потоков ввода-вывода
+    }
+
+    public enum ThreadMode {
+        PLATFORM, // обычные потоки ОС
+        VIRTUAL   // виртуальные потоки (JDK 21+), блокирующий код остается как есть
+    }
+
+    private int port = 5556;
+    private Engine engine = Engine.BLOCKING;
+    private int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private ThreadMode threadMode = ThreadMode.PLATFORM;
+    private int roomLoops = Runtime.getRuntime().availableProcessors(); // потоков, между которыми делятся комнаты
+    private int sendQueueBytes = 256 * 1024;
+    private long sendQueueMaxAgeMs = 5000;
+    private int tickRate = 30; // шагов симуляции комнаты в секунду
+    private int sendRate = 15; // снимков GAME_STATE в секунду; клиент прогнозирует и интерполирует между ними
+    private int inputRate = GameSettings.DEFAULT_INPUT_RATE; // команд ввода в секунду от клиента
+    private int spectatorRate = 5; // снимков в секунду наблюдателям
+    private int udpPort = 0; // 0 - UDP выключен, все идет по TCP
+    private double udpLoss = 0; // доля датаграмм, теряемых нарочно (для проверки на loopback)
+    private int maxRooms = 500; // одновременных матчей на процесс
+    private int maxPlayersPerRoom = 16;
+    private int parallelThreshold = 4096; // с какого размера комнаты итог раунда считается параллельно
+    private int matchSize = 8; // игроков в пачке подбора
+    private long matchWaitMs = 3000; // сколько голова очереди ждет полной пачки
+    private int queueCapacity = 10000; // дальше CONNECT получает JOIN_REJECTED
+    private String gateway = null; // host:port канала управления шлюза; null - узел работает сам по себе
+    private String advertiseHost = "127.0.0.1"; // адрес, по которому шлюз подключается к этому узлу
+
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Ожидается аргумент вида --ключ=значение: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            config.set(key, value);
+        }
+        return config;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "engine":
+                engine = Engine.valueOf(value.toUpperCase());
+                break;
+            case "io-threads":
+                ioThreads = Math.max(1, Integer.parseInt(value));
+                break;
+            case "threads":
+                threadMode = ThreadMode.valueOf(value.toUpperCase());
+                break;
+            case "room-loops":
+            case "timer-threads": // прежнее название
+                roomLoops = Math.max(1, Integer.parseInt(value));
+                break;
+            case "send-queue-bytes":
+                sendQueueBytes = Integer.parseInt(value);
+                break;
+            case "send-queue-max-age-ms":
+                sendQueueMaxAgeMs = Long.parseLong(value);
+                break;
+            case "tick-rate":
+                tickRate = Math.max(1, Integer.parseInt(value));
+                break;
+            case "send-rate":
+                sendRate = Math.max(1, Integer.parseInt(value));
+                break;
+            case "input-rate":
+                inputRate = Math.max(1, Math.min(240, Integer.parseInt(value)));
+                break;
+            case "spectator-rate":
+                spectatorRate = Math.max(1, Integer.parseInt(value));
+                break;
+            case "udp-port":
+                udpPort = Integer.parseInt(value);
+                break;
+            case "udp-loss":
+                udpLoss = Math.max(0, Math.min(1, Double.parseDouble(value)));
+                break;
+            case "max-rooms":
+                maxRooms = Math.max(1, Integer.parseInt(value));
+                break;
+            case "max-players-per-room":
+                // Число игроков в снимке уходит по сети как u16
+                maxPlayersPerRoom = Math.max(2, Math.min(65535, Integer.parseInt(value)));
+                break;
+            case "parallel-threshold":
+                parallelThreshold = Math.max(1, Integer.parseInt(value));
+                break;
+            case "match-size":
+                matchSize = Math.max(2, Integer.parseInt(value));
+                break;
+            case "match-wait-ms":
+                matchWaitMs = Math.max(0, Long.parseLong(value));
+                break;
+            case "queue-capacity":
+                queueCapacity = Math.max(1, Integer.parseInt(value));
+                break;
+            case "gateway":
+                gateway = value.isEmpty() ? null : value;
+                break;
+            case "advertise-host":
+                advertiseHost = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный параметр: --" + key);
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public void setThreadMode(ThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    public int getRoomLoops() {
+        return roomLoops;
+    }
+
+    public void setRoomLoops(int roomLoops) {
+        this.roomLoops = roomLoops;
+    }
+
+    public int getSendQueueBytes() {
+        return sendQueueBytes;
+    }
+
+    public void setSendQueueBytes(int sendQueueBytes) {
+        this.sendQueueBytes = sendQueueBytes;
+    }
+
+    public long getSendQueueMaxAgeMs() {
+        return sendQueueMaxAgeMs;
+    }
+
+    public void setSendQueueMaxAgeMs(long sendQueueMaxAgeMs) {
+        this.sendQueueMaxAgeMs = sendQueueMaxAgeMs;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public void setTickRate(int tickRate) {
+        this.tickRate = tickRate;
+    }
+
+    public int getSendRate() {
+        return sendRate;
+    }
+
+    public void setSendRate(int sendRate) {
+        this.sendRate = sendRate;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public void setInputRate(int inputRate) {
+        this.inputRate = inputRate;
+    }
+
+    public int getSpectatorRate() {
+        return spectatorRate;
+    }
+
+    public void setSpectatorRate(int spectatorRate) {
+        this.spectatorRate = spectatorRate;
+    }
+
+    public int getUdpPort() {
+        return udpPort;
+    }
+
+    public void setUdpPort(int udpPort) {
+        this.udpPort = udpPort;
+    }
+
+    public double getUdpLoss() {
+        return udpLoss;
+    }
+
+    public void setUdpLoss(double udpLoss) {
+        this.udpLoss = udpLoss;
+    }
+
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    public void setMaxRooms(int maxRooms) {
+        this.maxRooms = maxRooms;
+    }
+
+    public int getMaxPlayersPerRoom() {
+        return maxPlayersPerRoom;
+    }
+
+    public void setMaxPlayersPerRoom(int maxPlayersPerRoom) {
+        this.maxPlayersPerRoom = maxPlayersPerRoom;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getMatchSize() {
+        return matchSize;
+    }
+
+    public void setMatchSize(int matchSize) {
+        this.matchSize = matchSize;
+    }
+
+    public long getMatchWaitMs() {
+        return matchWaitMs;
+    }
+
+    public void setMatchWaitMs(long matchWaitMs) {
+        this.matchWaitMs = matchWaitMs;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public String getGateway() {
+        return gateway;
+    }
+
+    public void setGateway(String gateway) {
+        this.gateway = gateway;
+    }
+
+    public String getAdvertiseHost() {
+        return advertiseHost;
+    }
+
+    public void setAdvertiseHost(String advertiseHost) {
+        this.advertiseHost = advertiseHost;
+    }
+
+    @Override
+    public String toString() {
+        return "port=" + port + ", engine=" + engine + ", ioThreads=" + ioThreads +
+                ", threads=" + threadMode + ", roomLoops=" + roomLoops +
+                ", sendQueueBytes=" + sendQueueBytes + ", sendQueueMaxAgeMs=" + sendQueueMaxAgeMs +
+                ", tickRate=" + tickRate + ", sendRate=" + sendRate + ", inputRate=" + inputRate +
+                ", spectatorRate=" + spectatorRate +
+                ", udpPort=" + udpPort + ", udpLoss=" + udpLoss +
+                ", maxRooms=" + maxRooms + ", maxPlayersPerRoom=" + maxPlayersPerRoom +
+                ", parallelThreshold=" + parallelThreshold +
+                ", matchSize=" + matchSize + ", matchWaitMs=" + matchWaitMs + ", queueCapacity=" + queueCapacity +
+                ", gateway=" + gateway + ", advertiseHost=" + advertiseHost;
+    }
+}
@@ -0,0 +1,16 @@
+package server;
+
+import java.io.IOException;
+
+/**
+ * Сетевой движок сервера: принимает соединения и создает для них ClientConnection.
+ */
+public interface ServerEngine {
+
+    /**
+     * Запустить движок. Блокирует вызывающий поток до остановки.
+     */
+    void start() throws IOException;
+
+    void stop();
+}
@@ -0,0 +1,126 @@
+package server;
+
+import common.BinaryCodec;
+import common.Message;
+import common.PlayerColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Последние разосланные снимки игроков комнаты. Бинарным клиентам уходит
+ * не весь список игроков, а только изменения относительно снимка,
+ * получение которого клиент подтвердил (SNAPSHOT_ACK).
+ *
+ * Позиции хранятся уже квантованными, поэтому "не изменился" означает
+ * то же самое, что увидит клиент после декодирования.
+ * Снимок - набор массивов по слотам игроков, как и PlayerTable, поэтому
+ * запись и сравнение с базой идут индекс в индекс по примитивам.
+ * Массивы снимков переиспользуются по кругу: новый снимок пишется
+ * на место вытесненного, без новых объектов на каждого игрока.
+ * Используется только из потока тика комнаты.
+ */
+class SnapshotHistory {
+    // Клиент держит больше (см. SnapshotAssembler), поэтому базовый снимок у него всегда есть
+    static final int CAPACITY = 32;
+
+    private static final class Frame {
+        final String[] names; // null - слот пуст
+        final char[] x;
+        final char[] y;
+        final boolean[] alive;
+        final int[] lastInputSeq;
+
+        Frame(int slots) {
+            names = new String[slots];
+            x = new char[slots];
+            y = new char[slots];
+            alive = new boolean[slots];
+            lastInputSeq = new int[slots];
+        }
+    }
+
+    private final Frame[] frames = new Frame[CAPACITY];
+    private int lastSeq = 0;
+
+    /**
+     * Запомнить текущее состояние игроков как новый снимок.
+     */
+    int record(PlayerTable players) {
+        lastSeq++;
+        Frame frame = frames[lastSeq % CAPACITY];
+        if (frame == null || frame.names.length != players.getSlotCount()) {
+            frame = new Frame(players.getSlotCount());
+            frames[lastSeq % CAPACITY] = frame;
+        }
+        for (int slot = 0; slot < frame.names.length; slot++) {
+            String name = players.getName(slot);
+            frame.names[slot] = name;
+            if (name != null) {
+                frame.x[slot] = (char) players.quantizedX(slot);
+                frame.y[slot] = (char) players.quantizedY(slot);
+                frame.alive[slot] = players.isAlive(slot);
+                frame.lastInputSeq[slot] = players.getLastInputSeq(slot);
+            }
+        }
+        return lastSeq;
+    }
+
+    boolean contains(int seq) {
+        return seq > 0 && seq <= lastSeq && seq > lastSeq - CAPACITY;
+    }
+
+    /**
+     * Дописать в сообщение изменения последнего снимка относительно baseline:
+     * новых и сдвинувшихся игроков (имя только у новых) и ушедших.
+     * Слот, который за это время занял другой игрок (имя не совпало),
+     * уходит как новый, с именем.
+     *
+     * Смена одного lastInputSeq игрока не повод его слать: раз позиция та же,
+     * повтор команд с номером из базового снимка приведет клиента в ту же точку,
+     * а стоящие игроки не раздувают дельту пустыми командами.
+     */
+    void fillDelta(Message message, int baselineSeq) {
+        Frame baseline = frames[baselineSeq % CAPACITY];
+        Frame current = frames[lastSeq % CAPACITY];
+
+        // Изменения пишутся сразу в массивы PlayerColumns, без объекта на игрока
+        int slots = current.names.length;
+        int[] ids = new int[slots];
+        String[] names = new String[slots];
+        double[] x = new double[slots];
+        double[] y = new double[slots];
+        boolean[] alive = new boolean[slots];
+        int[] lastInputSeq = new int[slots];
+        int changed = 0;
+        List<Integer> removed = new ArrayList<>();
+        for (int slot = 0; slot < slots; slot++) {
+            String name = current.names[slot];
+            String before = baseline.names[slot];
+            if (name == null) {
+                if (before != null) {
+                    removed.add(slot);
+                }
+                continue;
+            }
+            boolean added = before == null || !Objects.equals(before, name);
+            if (!added && baseline.x[slot] == current.x[slot] && baseline.y[slot] == current.y[slot]
+                    && baseline.alive[slot] == current.alive[slot]) {
+                continue;
+            }
+            ids[changed] = slot;
+            names[changed] = added ? name : null; // имя шлется только новым, остальных клиент знает
+            x[changed] = BinaryCodec.dequantize(current.x[slot]);
+            y[changed] = BinaryCodec.dequantize(current.y[slot]);
+            alive[changed] = current.alive[slot];
+            lastInputSeq[changed] = current.lastInputSeq[slot];
+            changed++;
+        }
+
+        message.setSnapshotSeq(lastSeq);
+        message.setBaselineSeq(baselineSeq);
+        message.setPlayers(new PlayerColumns(changed, ids, names, x, y, alive, lastInputSeq));
+        message.setRemovedPlayers(removed);
+    }
+}
@@ -0,0 +1,166 @@
+package server;
+
+import common.DatagramCodec;
+import common.Message;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Необязательный UDP-канал для частых сообщений, которые не жалко потерять:
+ * MOVE, INPUT и SNAPSHOT_ACK от клиента, GAME_STATE от сервера. Потерянный сегмент
+ * TCP задерживает все следующие снимки, а потерянная датаграмма - только себя.
+ * Управляющие сообщения (CONNECT, ROUND_START, GAME_OVER и т.д.) остаются на TCP.
+ *
+ * Клиент получает метку в ответе на CONNECT; адрес клиента сервер узнает
+ * из первой датаграммы с этой меткой и дальше обновляет по последней.
+ */
+public class UdpTransport implements Runnable {
+    private final DatagramChannel channel;
+    private final double loss;
+    private final SecureRandom tokens = new SecureRandom();
+    private final Map<Long, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    /**
+     * UDP-сторона одного клиентского соединения.
+     */
+    static final class Endpoint {
+        final long token;
+        final ClientConnection connection;
+        private final AtomicInteger outboundSeq = new AtomicInteger();
+        private volatile SocketAddress address; // null, пока от клиента не было датаграмм
+        private int inboundSeq; // только из потока приема
+
+        Endpoint(long token, ClientConnection connection) {
+            this.token = token;
+            this.connection = connection;
+        }
+    }
+
+    public UdpTransport(ServerConfig config) throws IOException {
+        this.loss = config.getUdpLoss();
+        this.channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(config.getUdpPort()));
+    }
+
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    Endpoint register(ClientConnection connection) {
+        while (true) {
+            long token = tokens.nextLong();
+            if (token == 0) {
+                continue;
+            }
+            Endpoint endpoint = new Endpoint(token, connection);
+            if (endpoints.putIfAbsent(token, endpoint) == null) {
+                return endpoint;
+            }
+        }
+    }
+
+    void unregister(Endpoint endpoint) {
+        endpoints.remove(endpoint.token);
+    }
+
+    /**
+     * Отправить кадр BinaryCodec датаграммой. false - адрес клиента еще неизвестен
+     * или кадр не помещается в датаграмму; тогда его нужно отправить по TCP.
+     */
+    boolean send(Endpoint endpoint, byte[] frame) {
+        SocketAddress address = endpoint.address;
+        if (address == null) {
+            return false;
+        }
+        ByteBuffer datagram = DatagramCodec.encode(endpoint.token, endpoint.outboundSeq.incrementAndGet(), frame);
+        if (datagram == null) {
+            return false;
+        }
+        if (dropped()) {
+            return true; // для отправителя потеря выглядит как успешная отправка
+        }
+        try {
+            channel.send(datagram, address);
+        } catch (IOException e) {
+            System.err.println("[UDP][ERROR] Ошибка отправки датаграммы: " + e.getMessage());
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        System.out.println("[UDP] Прием датаграмм на порту " + getPort() + (loss > 0 ? ", потери " + loss : ""));
+        ByteBuffer buffer = ByteBuffer.allocate(DatagramCodec.MAX_DATAGRAM_SIZE);
+        while (running) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                buffer.flip();
+                if (source != null && !dropped()) {
+                    onDatagram(buffer, source);
+                }
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("[UDP][ERROR] Ошибка приема: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void onDatagram(ByteBuffer datagram, SocketAddress source) {
+        if (datagram.remaining() <= DatagramCodec.HEADER_SIZE) {
+            return;
+        }
+        Endpoint endpoint = endpoints.get(DatagramCodec.token(datagram));
+        if (endpoint == null) {
+            return; // чужая или устаревшая метка
+        }
+
+        // Опоздавшие и повторные датаграммы отбрасываем
+        int seq = DatagramCodec.seq(datagram);
+        if (endpoint.address != null && !DatagramCodec.isNewer(seq, endpoint.inboundSeq)) {
+            return;
+        }
+        endpoint.inboundSeq = seq;
+        endpoint.address = source;
+
+        Message message;
+        try {
+            message = DatagramCodec.decode(datagram);
+        } catch (Exception e) {
+            System.err.println("[UDP][ERROR] Некорректная датаграмма: " + e.getMessage());
+            return;
+        }
+        endpoint.connection.onDatagram(message);
+    }
+
+    private boolean dropped() {
+        return loss > 0 && ThreadLocalRandom.current().nextDouble() < loss;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[UDP][ERROR] Ошибка при закрытии канала: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Доступ к виртуальным потокам (JDK 21+) без повышения целевой версии сборки.
+ * Проект собирается под Java 17, поэтому API вызывается через reflection.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Executor, запускающий каждую задачу в новом виртуальном потоке,
+     * или null, если в этой JVM (до 21) виртуальных потоков нет.
+     */
+    static ExecutorService newPerTaskExecutor() {
+        Method method = findFactoryMethod();
+        if (method == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Не удалось создать executor виртуальных потоков", e);
+        }
+    }
+
+    private static Method findFactoryMethod() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
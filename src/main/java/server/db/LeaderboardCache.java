@@ -0,0 +1,200 @@
+package server.db;
+
+import common.ScoreboardEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Таблица рекордов целиком в памяти. Из SQLite читается целиком при старте,
+ * дальше обновляется каждым поставленным на запись результатом
+ * (см. ScoreboardWriter), поэтому место игрока и страницы таблицы
+ * считаются без запросов к базе.
+ *
+ * Файл базы могут делить несколько узлов. Чужие результаты попадают сюда
+ * через refresh: поток записи раз в несколько секунд дочитывает строки,
+ * измененные с прошлого обновления. Между обновлениями узел видит таблицу
+ * с отставанием до REFRESH_INTERVAL_MS (см. ScoreboardWriter) по чужим
+ * результатам; свои видны сразу.
+ *
+ * Результат - число раундов, диапазон небольшой, поэтому количество игроков
+ * по каждому результату лежит в дереве Фенвика: место и перцентиль - сумма
+ * на префиксе, O(log R), а не COUNT(*) по таблице. Игроки с одинаковым
+ * результатом - в списке этого результата, отсортированном по имени: по нему
+ * страница листается без обхода тех, кто выше, а соседние страницы не
+ * повторяют и не теряют игроков с равным результатом. Дерево растет вдвое,
+ * если результат в него не влез.
+ *
+ * Вызывается из потоков циклов комнат (offer) и сетевых потоков (запросы).
+ */
+public class LeaderboardCache {
+    private static final int INITIAL_SCORES = 64;
+    // Чужой узел ставит время записи до коммита: перечитываем с запасом, повтор безвреден
+    private static final long REFRESH_OVERLAP_MS = 5000;
+
+    private final ScoreboardRepository repository;
+    private long lastRefreshAt;
+
+    private final Map<String, Integer> scores = new HashMap<>();
+    // Игроки по результату, внутри результата - по имени
+    private final Map<Integer, List<String>> byScore = new HashMap<>();
+    private int[] tree = new int[INITIAL_SCORES + 1]; // дерево Фенвика: игроков с результатом score хранит индекс score + 1
+    private int total = 0;
+
+    public LeaderboardCache(ScoreboardRepository repository) {
+        this.repository = repository;
+        this.lastRefreshAt = System.currentTimeMillis();
+        for (ScoreboardEntry entry : repository.getAll()) {
+            track(entry.getPlayerName(), entry.getWins()).add(entry.getPlayerName());
+        }
+        // При загрузке списки сортируются один раз, а не вставкой по одному
+        for (List<String> names : byScore.values()) {
+            Collections.sort(names);
+        }
+    }
+
+    /**
+     * Дочитать из базы результаты, записанные с прошлого обновления, в том числе
+     * другими узлами. Вызывается из потока записи (ScoreboardWriter).
+     * Возвращает, сколько строк прочитано.
+     */
+    public int refresh() {
+        long startedAt = System.currentTimeMillis();
+        List<ScoreboardEntry> changed = repository.getChangedSince(lastRefreshAt - REFRESH_OVERLAP_MS);
+        for (ScoreboardEntry entry : changed) {
+            offer(entry.getPlayerName(), entry.getWins());
+        }
+        lastRefreshAt = startedAt;
+        return changed.size();
+    }
+
+    /**
+     * Учесть новый результат игрока, если он лучше прежнего.
+     */
+    public synchronized void offer(String playerName, int score) {
+        if (score < 0) return;
+
+        Integer previous = scores.get(playerName);
+        if (previous != null) {
+            if (previous >= score) return;
+            remove(playerName, previous);
+        }
+        insert(playerName, score);
+    }
+
+    /**
+     * Страница таблицы по убыванию результата, начиная с места offset + 1.
+     * Равные результаты идут по имени.
+     */
+    public synchronized List<ScoreboardEntry> getPage(int offset, int limit) {
+        List<ScoreboardEntry> page = new ArrayList<>(Math.max(0, Math.min(limit, total - offset)));
+        int index = Math.max(0, offset);
+        while (page.size() < limit && index < total) {
+            // index-й сверху - (total - index)-й снизу
+            int score = findByCount(total - index);
+            List<String> names = byScore.get(score);
+            int above = total - prefix(score);
+            for (int i = index - above; i < names.size() && page.size() < limit; i++, index++) {
+                page.add(new ScoreboardEntry(names.get(i), score));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Место игрока с 1 (одинаковые результаты делят место), 0 - игрока нет в таблице.
+     */
+    public synchronized int getRank(String playerName) {
+        Integer score = scores.get(playerName);
+        return score == null ? 0 : total - prefix(score) + 1;
+    }
+
+    /**
+     * Процент игроков с результатом ниже; с таким же - считаются наполовину.
+     */
+    public synchronized double getPercentile(String playerName) {
+        Integer score = scores.get(playerName);
+        if (score == null) return 0;
+        int below = prefix(score - 1);
+        int same = byScore.get(score).size();
+        return 100.0 * (below + same / 2.0) / total;
+    }
+
+    // Лучший результат игрока, 0 - игрока нет в таблице
+    public synchronized int getScore(String playerName) {
+        return scores.getOrDefault(playerName, 0);
+    }
+
+    public synchronized int getSize() {
+        return total;
+    }
+
+    private void insert(String playerName, int score) {
+        List<String> names = track(playerName, score);
+        names.add(-Collections.binarySearch(names, playerName) - 1, playerName);
+    }
+
+    // Учесть игрока в дереве и вернуть список его результата; в список игрока кладет вызывающий
+    private List<String> track(String playerName, int score) {
+        ensureCapacity(score);
+        scores.put(playerName, score);
+        add(score, 1);
+        total++;
+        return byScore.computeIfAbsent(score, s -> new ArrayList<>());
+    }
+
+    private void remove(String playerName, int score) {
+        List<String> names = byScore.get(score);
+        names.remove(Collections.binarySearch(names, playerName));
+        if (names.isEmpty()) {
+            byScore.remove(score);
+        }
+        scores.remove(playerName);
+        add(score, -1);
+        total--;
+    }
+
+    private void ensureCapacity(int score) {
+        if (score < tree.length - 1) return;
+
+        int capacity = tree.length - 1;
+        while (score >= capacity) {
+            capacity *= 2;
+        }
+        tree = new int[capacity + 1];
+        for (Map.Entry<Integer, List<String>> entry : byScore.entrySet()) {
+            add(entry.getKey(), entry.getValue().size());
+        }
+    }
+
+    private void add(int score, int delta) {
+        for (int i = score + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Сколько игроков с результатом не выше score
+    private int prefix(int score) {
+        int sum = 0;
+        for (int i = Math.min(score + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // Наименьший результат, на котором prefix(score) >= count (count от 1 до total)
+    private int findByCount(int count) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < count) {
+                position = next;
+                count -= tree[next];
+            }
+        }
+        return position; // индекс дерева position + 1 - это результат position
+    }
+}
@@ -5,28 +5,88 @@ import common.ScoreboardEntry;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
-
-public class ScoreboardRepository {
+import java.util.Map;
+
+/**
+ * Таблица рекордов в SQLite. Соединение и подготовленный запрос записи живут
+ * все время работы сервера. База в режиме WAL: читатели других узлов не ждут
+ * записи, а запись не ждет fsync на каждой транзакции (synchronous=NORMAL).
+ *
+ * Рейтинг читается из LeaderboardCache: база читается при старте целиком,
+ * а дальше только строки, измененные с прошлого обновления;
+ * запросы ТОПа и места к ней не идут. Пишет один поток (ScoreboardWriter),
+ * соединение все равно используется под блокировкой.
+ */
+public class ScoreboardRepository implements AutoCloseable {
 
     private static final String DB_URL = "jdbc:sqlite:scoreboard.db";
+    // Сколько ждать, если базу держит другой процесс (несколько узлов на одной машине)
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    // updated_at - время записи в мс; по нему узлы подтягивают чужие результаты
+    private static final String UPSERT_SQL = """
+                INSERT INTO scoreboard (player_name, score, updated_at)
+                VALUES (?, ?, ?)
+                ON CONFLICT(player_name)
+                DO UPDATE SET score = excluded.score, updated_at = excluded.updated_at
+                WHERE excluded.score > scoreboard.score
+            """;
+    private static final String ALL_SQL = "SELECT player_name, score FROM scoreboard";
+    private static final String CHANGED_SQL = "SELECT player_name, score FROM scoreboard WHERE updated_at >= ?";
+
+    private final Connection writer;
+    private final PreparedStatement upsert; // под блокировкой writer
+    private final PreparedStatement changed; // под блокировкой writer
 
     public ScoreboardRepository() {
-        init();
+        this(DB_URL);
     }
 
-    private void init() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
+    public ScoreboardRepository(String url) {
+        try {
+            writer = open(url);
+            init();
+            upsert = writer.prepareStatement(UPSERT_SQL);
+            changed = writer.prepareStatement(CHANGED_SQL);
+        } catch (SQLException e) {
+            throw new RuntimeException("Ошибка инициализации БД", e);
+        }
+    }
+
+    private static Connection open(String url) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = NORMAL");
+        }
+        return conn;
+    }
+
+    private void init() throws SQLException {
+        try (Statement stmt = writer.createStatement()) {
 
             stmt.execute("""
                         CREATE TABLE IF NOT EXISTS scoreboard (
                             player_name TEXT PRIMARY KEY,
-                            score INTEGER NOT NULL
+                            score INTEGER NOT NULL,
+                            updated_at INTEGER NOT NULL DEFAULT 0
                         )
                     """);
+            // База от прежней версии: колонки еще нет, старые строки считаются записанными давно
+            boolean hasUpdatedAt = false;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(scoreboard)")) {
+                while (rs.next()) {
+                    hasUpdatedAt |= "updated_at".equals(rs.getString("name"));
+                }
+            }
+            if (!hasUpdatedAt) {
+                stmt.execute("ALTER TABLE scoreboard ADD COLUMN updated_at INTEGER NOT NULL DEFAULT 0");
+            }
+            stmt.execute("CREATE INDEX IF NOT EXISTS scoreboard_updated ON scoreboard(updated_at)");
+            // ТОП считает LeaderboardCache: индекс по score только удорожал бы запись
+            stmt.execute("DROP INDEX IF EXISTS scoreboard_score");
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Ошибка инициализации БД", e);
         }
     }
 
@@ -35,57 +95,113 @@ public class ScoreboardRepository {
      */
     public void updateIfBetter(String playerName, int newScore) {
         if (newScore < 5) return;
-        String sql = """
-                    INSERT INTO scoreboard (player_name, score)
-                    VALUES (?, ?)
-                    ON CONFLICT(player_name)
-                    DO UPDATE SET score = excluded.score
-                    WHERE excluded.score > scoreboard.score
-                """;
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, playerName);
-            ps.setInt(2, newScore);
-            ps.executeUpdate();
+        synchronized (writer) {
+            try {
+                upsert.setString(1, playerName);
+                upsert.setInt(2, newScore);
+                upsert.setLong(3, System.currentTimeMillis());
+                upsert.executeUpdate();
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Ошибка обновления рейтинга", e);
+            } catch (SQLException e) {
+                throw new RuntimeException("Ошибка обновления рейтинга", e);
+            }
         }
     }
 
     /**
-     * Получить ТОП N игроков
+     * Обновить пачку результатов одной транзакцией: на всю пачку один коммит
+     * и одна запись в журнал вместо отдельной транзакции на каждого игрока.
      */
-    public List<ScoreboardEntry> getTop(int limit) {
-        String sql = """
-                    SELECT player_name, score
-                    FROM scoreboard
-                    ORDER BY score DESC
-                    LIMIT ?
-                """;
-
-        List<ScoreboardEntry> result = new ArrayList<>();
+    public void updateAllIfBetter(Map<String, Integer> scores) {
+        synchronized (writer) {
+            try {
+                writer.setAutoCommit(false);
+                try {
+                    long now = System.currentTimeMillis();
+                    for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+                        if (entry.getValue() < 5) continue;
+                        upsert.setString(1, entry.getKey());
+                        upsert.setInt(2, entry.getValue());
+                        upsert.setLong(3, now);
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                    writer.commit();
+                } catch (SQLException e) {
+                    upsert.clearBatch();
+                    writer.rollback();
+                    throw e;
+                } finally {
+                    writer.setAutoCommit(true);
+                }
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+            } catch (SQLException e) {
+                throw new RuntimeException("Ошибка обновления рейтинга", e);
+            }
+        }
+    }
 
-            ps.setInt(1, limit);
+    /**
+     * Все игроки таблицы, без порядка. Читается один раз при старте (см. LeaderboardCache).
+     */
+    public List<ScoreboardEntry> getAll() {
+        List<ScoreboardEntry> result = new ArrayList<>();
 
-            try (ResultSet rs = ps.executeQuery()) {
+        synchronized (writer) {
+            try (Statement stmt = writer.createStatement();
+                 ResultSet rs = stmt.executeQuery(ALL_SQL)) {
                 while (rs.next()) {
                     result.add(new ScoreboardEntry(
                             rs.getString("player_name"),
                             rs.getInt("score")
                     ));
                 }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Ошибка чтения рейтинга", e);
             }
+        }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Ошибка чтения рейтинга", e);
+        return result;
+    }
+
+    /**
+     * Игроки, чей результат записан не раньше sinceMillis, в том числе другими узлами,
+     * которые делят этот файл (см. LeaderboardCache.refresh).
+     */
+    public List<ScoreboardEntry> getChangedSince(long sinceMillis) {
+        List<ScoreboardEntry> result = new ArrayList<>();
+
+        synchronized (writer) {
+            try {
+                changed.setLong(1, sinceMillis);
+
+                try (ResultSet rs = changed.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(new ScoreboardEntry(
+                                rs.getString("player_name"),
+                                rs.getInt("score")
+                        ));
+                    }
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Ошибка чтения рейтинга", e);
+            }
         }
 
         return result;
     }
+
+    @Override
+    public void close() {
+        synchronized (writer) {
+            try {
+                writer.close();
+            } catch (SQLException e) {
+                System.err.println("[SERVER][WARN] Ошибка закрытия БД: " + e.getMessage());
+            }
+        }
+    }
 }
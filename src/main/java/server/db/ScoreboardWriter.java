@@ -0,0 +1,128 @@
+package server.db;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отложенная запись таблицы рекордов. Тик комнаты не ждет диска: результат
+ * только кладется в очередь, где по каждому игроку остается лучший результат.
+ * Фоновый поток пишет накопившееся одной транзакцией раз в FLUSH_INTERVAL_MS
+ * или сразу, как очередь дорастет до BATCH_SIZE игроков.
+ *
+ * Результат остается в очереди, пока не записан. ТОП в памяти (LeaderboardCache)
+ * обновляется сразу при постановке, поэтому таблица после конца игры уже
+ * учитывает только что сыгравших. При остановке очередь дописывается до конца.
+ *
+ * Тот же поток раз в REFRESH_INTERVAL_MS подтягивает в LeaderboardCache
+ * результаты, записанные в общий файл другими узлами.
+ */
+public class ScoreboardWriter implements AutoCloseable {
+    private static final long FLUSH_INTERVAL_MS = 500;
+    private static final int BATCH_SIZE = 256;
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+    static final long REFRESH_INTERVAL_MS = 2000;
+
+    private final ScoreboardRepository repository;
+    private final LeaderboardCache leaderboard;
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+    private final Object signal = new Object();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private boolean failing = false; // только в потоке записи
+    private long nextRefreshAt = System.currentTimeMillis() + REFRESH_INTERVAL_MS; // только в потоке записи
+
+    public ScoreboardWriter(ScoreboardRepository repository, LeaderboardCache leaderboard) {
+        this.repository = repository;
+        this.leaderboard = leaderboard;
+        this.thread = new Thread(this::run, "scoreboard-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Поставить результат в очередь на запись, если он лучше уже стоящего там.
+     * Вызывается из потоков циклов комнат и не блокируется на базе.
+     */
+    public void submit(String playerName, int score) {
+        if (score < 5) return;
+
+        leaderboard.offer(playerName, score);
+        pending.merge(playerName, score, Math::max);
+        if (pending.size() >= BATCH_SIZE) {
+            synchronized (signal) {
+                signal.notify();
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            synchronized (signal) {
+                if (running && pending.size() < BATCH_SIZE) {
+                    try {
+                        signal.wait(FLUSH_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+            flush();
+            if (System.currentTimeMillis() >= nextRefreshAt) {
+                refresh();
+            }
+        }
+        flush();
+    }
+
+    private void refresh() {
+        nextRefreshAt = System.currentTimeMillis() + REFRESH_INTERVAL_MS;
+        try {
+            leaderboard.refresh();
+        } catch (RuntimeException e) {
+            // Следующая попытка через интервал; отставание от других узлов лишь растет
+            System.err.println("[SERVER][WARN] Не удалось обновить рейтинг из БД: " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) return;
+
+        Map<String, Integer> batch = new HashMap<>(pending);
+        try {
+            repository.updateAllIfBetter(batch);
+        } catch (RuntimeException e) {
+            // Очередь не трогаем: попробуем снова на следующем сбросе
+            if (!failing) {
+                System.err.println("[SERVER][ERROR] Не удалось записать рейтинг (" + batch.size() + " игроков): " + e.getMessage());
+                failing = true;
+            }
+            return;
+        }
+        failing = false;
+        // Пока шла запись, результат игрока мог вырасти: такой остается в очереди
+        batch.forEach(pending::remove);
+    }
+
+    /**
+     * Дописать очередь и остановить поток записи. Комнаты к этому моменту
+     * уже остановлены, новых результатов не будет.
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (signal) {
+            signal.notify();
+        }
+        try {
+            thread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            System.err.println("[SERVER][WARN] Запись рейтинга не завершилась за " + CLOSE_TIMEOUT_MS + " мс");
+        } else if (!pending.isEmpty()) {
+            System.err.println("[SERVER][WARN] Не записано результатов: " + pending.size());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package server.nio;
+
+import server.ClientConnection;
+import server.RoomManager;
+import server.ServerConfig;
+import server.UdpTransport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Неблокирующее соединение. Все операции с каналом выполняются в потоке своего NioWorker,
+ * остальные потоки только кладут кадры в OutboundQueue.
+ */
+class NioClientConnection extends ClientConnection {
+    private final SocketChannel channel;
+    private final NioWorker worker;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private SelectionKey key;
+    private ByteBuffer writing; // кадр, который сокет принял не целиком
+
+    NioClientConnection(SocketChannel channel, NioWorker worker, RoomManager rooms, ServerConfig config, UdpTransport udp) {
+        super(rooms, config, udp);
+        this.channel = channel;
+        this.worker = worker;
+    }
+
+    // Вызывается из потока worker'а после регистрации в селекторе
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    void onReadable(ByteBuffer readBuffer) throws IOException {
+        readBuffer.clear();
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead == -1) {
+            close();
+            return;
+        }
+        readBuffer.flip();
+        onBytesReceived(readBuffer);
+    }
+
+    @Override
+    protected void onOutboundReady() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            worker.execute(this::flush);
+        }
+    }
+
+    // Пишем сколько примет сокет; остаток дописываем по OP_WRITE
+    void flush() {
+        flushScheduled.set(false);
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            while (true) {
+                if (writing == null) {
+                    byte[] frame = outbound.poll();
+                    if (frame == null) {
+                        break;
+                    }
+                    writing = ByteBuffer.wrap(frame);
+                }
+                channel.write(writing);
+                if (writing.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writing = null;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            System.err.println("[SERVER][ERROR] Ошибка отправки: " + e.getMessage());
+            close();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        worker.execute(this::close);
+    }
+
+    // Только из потока worker'а
+    void close() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при закрытии канала: " + e.getMessage());
+        }
+        writing = null;
+        onConnectionClosed();
+    }
+}
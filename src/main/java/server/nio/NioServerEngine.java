@@ -0,0 +1,68 @@
+package server.nio;
+
+import server.RoomManager;
+import server.ServerConfig;
+import server.ServerEngine;
+import server.UdpTransport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Движок на java.nio: accept в вызывающем потоке, чтение и запись
+ * на фиксированном наборе NioWorker'ов (соединения раздаются по кругу).
+ */
+public class NioServerEngine implements ServerEngine {
+    private final ServerConfig config;
+    private final RoomManager rooms;
+    private final UdpTransport udp; // null, если UDP выключен
+    private final NioWorker[] workers;
+    private ServerSocketChannel serverChannel;
+    private int nextWorker = 0;
+
+    public NioServerEngine(ServerConfig config, RoomManager rooms, UdpTransport udp) throws IOException {
+        this.config = config;
+        this.rooms = rooms;
+        this.udp = udp;
+        this.workers = new NioWorker[config.getIoThreads()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new NioWorker("nio-io-" + i);
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(config.getPort()));
+        for (NioWorker worker : workers) {
+            worker.start();
+        }
+        System.out.println("[SERVER] NIO движок запущен, потоков ввода-вывода: " + workers.length);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            SocketChannel channel = serverChannel.accept();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            workers[nextWorker].register(channel, rooms, config, udp);
+            nextWorker = (nextWorker + 1) % workers.length;
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при остановке сервера: " + e.getMessage());
+        }
+        for (NioWorker worker : workers) {
+            worker.stop();
+        }
+    }
+}
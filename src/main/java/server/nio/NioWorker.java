@@ -0,0 +1,128 @@
+package server.nio;
+
+import server.RoomManager;
+import server.ServerConfig;
+import server.UdpTransport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Поток ввода-вывода со своим селектором. Обслуживает множество соединений,
+ * буфер чтения один на весь поток.
+ */
+class NioWorker implements Runnable {
+    private final Selector selector;
+    private final Thread thread;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    NioWorker(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void register(SocketChannel channel, RoomManager rooms, ServerConfig config, UdpTransport udp) {
+        execute(() -> {
+            NioClientConnection connection = new NioClientConnection(channel, this, rooms, config, udp);
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.attach(key);
+            } catch (IOException e) {
+                System.err.println("[SERVER][ERROR] Не удалось зарегистрировать канал: " + e.getMessage());
+                connection.close();
+            }
+        });
+    }
+
+    /**
+     * Выполнить задачу в потоке этого worker'а.
+     */
+    void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    handleKey(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("[SERVER][ERROR] Ошибка селектора: " + e.getMessage());
+            }
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.err.println("[SERVER][ERROR] Ошибка задачи ввода-вывода: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        NioClientConnection connection = (NioClientConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (Exception e) {
+            System.err.println("[SERVER][ERROR] ОШИБКА: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            connection.close();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            ((NioClientConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при закрытии селектора: " + e.getMessage());
+        }
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+}
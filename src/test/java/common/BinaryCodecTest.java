@@ -0,0 +1,239 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryCodecTest {
+
+    // Значения выбраны точно представимыми во float32 и в квантованных позициях (шаг 1/64)
+    private static Map<String, Consumer<Message>> fields() {
+        Map<String, Consumer<Message>> fields = new LinkedHashMap<>();
+        fields.put("playerId", m -> m.setPlayerId(300));
+        fields.put("playerName", m -> m.setPlayerName("Игрок 1"));
+        fields.put("x", m -> m.setX(123.5));
+        fields.put("y", m -> m.setY(-7.25));
+        fields.put("targetColor", m -> m.setTargetColor("#FF00FF"));
+        fields.put("round", m -> m.setRound(7));
+        fields.put("timeLeft", m -> m.setTimeLeft(3.75));
+        fields.put("duration", m -> m.setDuration(10));
+        fields.put("gameStarted", m -> m.setGameStarted(true));
+        fields.put("isRoundActive", m -> m.setIsRoundActive(true));
+        fields.put("winner", m -> m.setWinner("Победитель"));
+        fields.put("scores", m -> m.setScores(List.of(new ScoreboardEntry("a", 5), new ScoreboardEntry("б", 0))));
+        fields.put("players", m -> m.setPlayers(players()));
+        fields.put("matchStartCountdown", m -> m.setMatchStartCountdown(2.5));
+        fields.put("field", m -> m.setField(new byte[]{0, 1, 2, 5, (byte) 200}));
+        fields.put("fieldVersion", m -> m.setFieldVersion(3));
+        fields.put("snapshotSeq", m -> m.setSnapshotSeq(41));
+        fields.put("baselineSeq", m -> m.setBaselineSeq(40));
+        fields.put("removedPlayers", m -> m.setRemovedPlayers(List.of(2, 128, 20000)));
+        fields.put("udpPort", m -> m.setUdpPort(65535));
+        fields.put("udpToken", m -> m.setUdpToken(Long.MIN_VALUE + 17));
+        fields.put("inputSeq", m -> m.setInputSeq(99));
+        fields.put("inputs", m -> m.setInputs(new byte[]{1, 2, 4, 8}));
+        fields.put("inputRate", m -> m.setInputRate(30));
+        fields.put("queuePosition", m -> m.setQueuePosition(12));
+        fields.put("queueSize", m -> m.setQueueSize(400));
+        fields.put("queueEta", m -> m.setQueueEta(-1));
+        fields.put("spectator", m -> m.setSpectator(true));
+        fields.put("pageOffset", m -> m.setPageOffset(20));
+        fields.put("pageSize", m -> m.setPageSize(65535));
+        fields.put("rank", m -> m.setRank(5));
+        fields.put("score", m -> m.setScore(11));
+        fields.put("rankedPlayers", m -> m.setRankedPlayers(1000000));
+        fields.put("percentile", m -> m.setPercentile(87.5));
+        fields.put("reason", m -> m.setReason("Сервер перегружен"));
+        fields.put("protocol", m -> m.setProtocol("BINARY"));
+        return fields;
+    }
+
+    private static List<Player> players() {
+        List<Player> players = new ArrayList<>();
+        Player named = new Player("Первый");
+        named.setId(1);
+        named.setX(100.25);
+        named.setY(599.984375);
+        named.setLastInputSeq(12);
+        players.add(named);
+
+        // Как в дельте: без имени, выбывший, слот больше 127 (два байта)
+        Player update = new Player();
+        update.setId(200);
+        update.setX(0);
+        update.setY(300.5);
+        players.add(update);
+        return players;
+    }
+
+    private static List<String> types() {
+        List<String> types = new ArrayList<>();
+        for (int id = 1; ; id++) {
+            try {
+                types.add(MessageTypes.typeOf(id));
+            } catch (IllegalArgumentException e) {
+                return types;
+            }
+        }
+    }
+
+    private static Message roundTrip(Message message) {
+        byte[] frame = BinaryCodec.encode(message);
+        int length = frame.length - BinaryCodec.LENGTH_PREFIX;
+        assertEquals(length, ((frame[0] & 0xFF) << 24) | ((frame[1] & 0xFF) << 16)
+                | ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF), "префикс длины");
+        return BinaryCodec.decode(frame, BinaryCodec.LENGTH_PREFIX, length);
+    }
+
+    // Message без equals: сравниваем JSON. Пустые списки геттеры создают лениво,
+    // поэтому перед сравнением они создаются у обоих сообщений
+    private static void assertSameMessage(Message expected, Message actual, String description) {
+        for (Message message : List.of(expected, actual)) {
+            message.getScores();
+            message.getPlayers();
+            message.getRemovedPlayers();
+        }
+        assertEquals(expected.toJson(), actual.toJson(), description);
+    }
+
+    @Test
+    void everyTypeWithoutFieldsRoundTrips() {
+        for (String type : types()) {
+            Message message = new Message(type);
+            assertSameMessage(message, roundTrip(message), type);
+        }
+    }
+
+    @Test
+    void everyFieldAloneRoundTrips() {
+        for (String type : types()) {
+            for (Map.Entry<String, Consumer<Message>> field : fields().entrySet()) {
+                Message message = new Message(type);
+                field.getValue().accept(message);
+                assertSameMessage(message, roundTrip(message), type + " + " + field.getKey());
+            }
+        }
+    }
+
+    @Test
+    void allFieldsTogetherRoundTrip() {
+        for (String type : types()) {
+            Message message = new Message(type);
+            fields().values().forEach(field -> field.accept(message));
+            assertSameMessage(message, roundTrip(message), type);
+        }
+    }
+
+    @Test
+    void fieldPairsRoundTrip() {
+        // Пары проверяют, что поле не сдвигает разбор соседних (порядок битов маски)
+        List<Map.Entry<String, Consumer<Message>>> fields = new ArrayList<>(fields().entrySet());
+        for (int i = 0; i < fields.size(); i++) {
+            for (int j = i + 1; j < fields.size(); j++) {
+                Message message = new Message(MessageTypes.GAME_STATE);
+                fields.get(i).getValue().accept(message);
+                fields.get(j).getValue().accept(message);
+                assertSameMessage(message, roundTrip(message),
+                        fields.get(i).getKey() + " + " + fields.get(j).getKey());
+            }
+        }
+    }
+
+    @Test
+    void playerColumnsEncodeLikePlayerList() {
+        List<Player> list = players();
+        int size = list.size();
+        int[] ids = new int[size];
+        String[] names = new String[size];
+        double[] x = new double[size];
+        double[] y = new double[size];
+        boolean[] alive = new boolean[size];
+        int[] lastInputSeq = new int[size];
+        for (int i = 0; i < size; i++) {
+            Player player = list.get(i);
+            ids[i] = player.getId();
+            names[i] = player.getName();
+            x[i] = player.getX();
+            y[i] = player.getY();
+            alive[i] = player.isAlive();
+            lastInputSeq[i] = player.getLastInputSeq();
+        }
+
+        Message fromList = new Message(MessageTypes.GAME_STATE);
+        fromList.setPlayers(list);
+        Message fromColumns = new Message(MessageTypes.GAME_STATE);
+        fromColumns.setPlayers(new PlayerColumns(size, ids, names, x, y, alive, lastInputSeq));
+
+        for (WireProtocol protocol : WireProtocol.values()) {
+            assertArrayEquals(protocol.encode(fromList), protocol.encode(fromColumns), protocol.name());
+        }
+    }
+
+    @Test
+    void truncatedFrameThrows() {
+        Message message = new Message(MessageTypes.GAME_STATE);
+        fields().values().forEach(field -> field.accept(message));
+        byte[] frame = BinaryCodec.encode(message);
+        int length = frame.length - BinaryCodec.LENGTH_PREFIX;
+
+        for (int truncated = 0; truncated < length; truncated++) {
+            int cut = truncated;
+            assertThrows(IllegalArgumentException.class,
+                    () -> BinaryCodec.decode(frame, BinaryCodec.LENGTH_PREFIX, cut), "длина " + cut);
+        }
+    }
+
+    @Test
+    void unknownTypeThrows() {
+        byte[] payload = {(byte) 0xFF, 0, 0, 0, 0};
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void oversizedFrameIsNotEncoded() {
+        List<ScoreboardEntry> scores = new ArrayList<>();
+        char[] name = new char[40];
+        Arrays.fill(name, 'x');
+        for (int i = 0; i < 30000; i++) {
+            scores.add(new ScoreboardEntry(new String(name), i));
+        }
+        Message message = new Message(MessageTypes.LEADERBOARD);
+        message.setScores(scores);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.encode(message));
+    }
+
+    @Test
+    void fieldLongerThanItsLengthPrefixIsNotEncoded() {
+        char[] name = new char[0x10000];
+        Arrays.fill(name, 'x');
+        Message longString = new Message(MessageTypes.CONNECT);
+        longString.setPlayerName(new String(name));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.encode(longString));
+
+        Message longList = new Message(MessageTypes.GAME_STATE);
+        List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i <= 0xFFFF; i++) {
+            removed.add(i);
+        }
+        longList.setRemovedPlayers(removed);
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.encode(longList));
+    }
+
+    @Test
+    void oversizedFrameIsNotDecoded() {
+        byte[] data = new byte[16];
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryCodec.decode(data, 0, BinaryCodec.MAX_FRAME_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(data, 8, 16));
+    }
+}
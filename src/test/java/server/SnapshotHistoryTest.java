@@ -0,0 +1,137 @@
+package server;
+
+import client.SnapshotAssembler;
+import common.BinaryCodec;
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotHistoryTest {
+
+    private final PlayerTable players = new PlayerTable(16, Integer.MAX_VALUE);
+    private final SnapshotHistory history = new SnapshotHistory();
+    private final SnapshotAssembler assembler = new SnapshotAssembler();
+
+    // Как у GameRoom: полный список из таблицы и номер только что записанного снимка
+    private Message fullState() {
+        int seq = history.record(players);
+        Message message = new Message(MessageTypes.GAME_STATE);
+        message.setPlayers(players.toColumns());
+        message.setSnapshotSeq(seq);
+        return message;
+    }
+
+    private Message delta(int baseline) {
+        history.record(players);
+        Message message = new Message(MessageTypes.GAME_STATE);
+        history.fillDelta(message, baseline);
+        return message;
+    }
+
+    // Кадр проходит через бинарный кодек, как по сети, и собирается клиентом
+    private List<Player> receive(Message message) {
+        byte[] frame = BinaryCodec.encode(message);
+        Message received = BinaryCodec.decode(frame, BinaryCodec.LENGTH_PREFIX, frame.length - BinaryCodec.LENGTH_PREFIX);
+        assertTrue(assembler.apply(received), "базовый снимок известен клиенту");
+        return received.getPlayers();
+    }
+
+    // Что должен видеть клиент: занятые слоты таблицы с квантованными координатами
+    private void assertMatchesTable(List<Player> received) {
+        List<Player> expected = players.toColumns();
+        assertEquals(expected.size(), received.size(), "число игроков");
+        for (Player want : expected) {
+            Player got = received.stream().filter(p -> p.getId() == want.getId()).findFirst().orElseThrow();
+            assertEquals(want.getName(), got.getName(), "имя слота " + want.getId());
+            assertEquals(BinaryCodec.dequantize(BinaryCodec.quantize(want.getX())), got.getX(), "x слота " + want.getId());
+            assertEquals(BinaryCodec.dequantize(BinaryCodec.quantize(want.getY())), got.getY(), "y слота " + want.getId());
+            assertEquals(want.isAlive(), got.isAlive(), "жив ли слот " + want.getId());
+        }
+    }
+
+    @Test
+    void deltaAgainstBaselineRebuildsFullState() {
+        int a = players.add("a", 100, 100);
+        int b = players.add("b", 200, 200);
+        int c = players.add("c", 300, 300);
+        players.add("d", 400, 400);
+        Message full = fullState();
+        int baseline = full.getSnapshotSeq();
+        assertMatchesTable(receive(full));
+
+        // Сдвиг, выбывание, уход и новый игрок на месте ушедшего
+        players.setX(a, 150.3);
+        players.setAlive(b, false);
+        players.remove(c);
+        int e = players.add("e", 500, 500);
+        assertEquals(c, e, "новый игрок занимает освободившийся слот");
+        players.add("f", 600, 100);
+
+        Message delta = delta(baseline);
+        assertEquals(baseline, delta.getBaselineSeq());
+        assertEquals(List.of(), delta.getRemovedPlayers(), "слот c занят другим игроком, он уходит как новый");
+        assertEquals(4, delta.getPlayers().size(), "a, b, e и f; d не менялся");
+        assertMatchesTable(receive(delta));
+    }
+
+    @Test
+    void deltaCarriesOnlyChangesAndNamesOfNewPlayers() {
+        int a = players.add("a", 100, 100);
+        int b = players.add("b", 200, 200);
+        int baseline = fullState().getSnapshotSeq();
+
+        players.setY(a, 120);
+        players.remove(b);
+        Message delta = delta(baseline);
+
+        assertEquals(1, delta.getPlayers().size());
+        Player moved = delta.getPlayers().get(0);
+        assertEquals(a, moved.getId());
+        assertNull(moved.getName(), "имя известно клиенту по базовому снимку");
+        assertEquals(List.of(b), delta.getRemovedPlayers());
+    }
+
+    @Test
+    void deltaChainAcrossSeveralBaselines() {
+        int a = players.add("a", 100, 100);
+        int b = players.add("b", 200, 200);
+        Message full = fullState();
+        receive(full);
+
+        // Клиент подтверждает не каждый снимок: база отстает на несколько номеров
+        int acked = full.getSnapshotSeq();
+        for (int step = 1; step <= 10; step++) {
+            players.setX(a, 100 + step * 7.5);
+            if (step == 4) {
+                players.setAlive(b, false);
+            }
+            if (step == 6) {
+                players.add("c", 50, 50);
+            }
+            Message delta = delta(acked);
+            assertMatchesTable(receive(delta));
+            if (step % 3 == 0) {
+                acked = delta.getSnapshotSeq();
+            }
+        }
+    }
+
+    @Test
+    void forgottenBaselineIsNotInHistory() {
+        players.add("a", 100, 100);
+        int first = fullState().getSnapshotSeq();
+        for (int i = 0; i < SnapshotHistory.CAPACITY; i++) {
+            history.record(players);
+        }
+        assertFalse(history.contains(first), "база вытеснена, клиенту уходит полный снимок");
+        assertTrue(history.contains(first + SnapshotHistory.CAPACITY));
+    }
+}
@@ -0,0 +1,160 @@
+package server.db;
+
+import common.ScoreboardEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaderboardCacheTest {
+
+    private final ScoreboardRepository repository = new ScoreboardRepository("jdbc:sqlite::memory:");
+    private final LeaderboardCache cache = new LeaderboardCache(repository);
+
+    @AfterEach
+    void close() {
+        repository.close();
+    }
+
+    private static List<String> names(List<ScoreboardEntry> page) {
+        List<String> names = new ArrayList<>();
+        for (ScoreboardEntry entry : page) {
+            names.add(entry.getPlayerName());
+        }
+        return names;
+    }
+
+    @Test
+    void rankCountsPlayersAboveAndTiesShareRank() {
+        cache.offer("a", 10);
+        cache.offer("b", 7);
+        cache.offer("c", 7);
+        cache.offer("d", 3);
+
+        assertEquals(1, cache.getRank("a"));
+        assertEquals(2, cache.getRank("b"));
+        assertEquals(2, cache.getRank("c"));
+        assertEquals(4, cache.getRank("d"), "после двух вторых мест идет четвертое");
+        assertEquals(0, cache.getRank("нет такого"));
+    }
+
+    @Test
+    void offerKeepsOnlyBetterScore() {
+        cache.offer("a", 5);
+        cache.offer("a", 3);
+        assertEquals(5, cache.getScore("a"));
+
+        cache.offer("a", 8);
+        assertEquals(8, cache.getScore("a"));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    void percentileCountsTiesAtHalfWeight() {
+        cache.offer("a", 1);
+        cache.offer("b", 2);
+        cache.offer("c", 2);
+        cache.offer("d", 3);
+
+        assertEquals(100.0 * 0.5 / 4, cache.getPercentile("a"), 1e-9);
+        assertEquals(100.0 * (1 + 2 / 2.0) / 4, cache.getPercentile("b"), 1e-9);
+        assertEquals(cache.getPercentile("b"), cache.getPercentile("c"), 1e-9);
+        assertEquals(100.0 * (3 + 0.5) / 4, cache.getPercentile("d"), 1e-9);
+        assertEquals(0, cache.getPercentile("нет такого"));
+    }
+
+    @Test
+    void pageBoundaries() {
+        for (int i = 0; i < 5; i++) {
+            cache.offer("p" + i, i);
+        }
+
+        assertEquals(List.of("p4", "p3"), names(cache.getPage(0, 2)));
+        assertEquals(List.of("p2", "p1"), names(cache.getPage(2, 2)));
+        assertEquals(List.of("p0"), names(cache.getPage(4, 2)), "последняя страница неполная");
+        assertEquals(List.of(), names(cache.getPage(5, 2)), "за концом таблицы пусто");
+        assertEquals(List.of(), names(cache.getPage(100, 2)));
+        assertEquals(List.of(), names(cache.getPage(0, 0)));
+        assertEquals(List.of("p4", "p3", "p2", "p1", "p0"), names(cache.getPage(0, 100)));
+        assertEquals(List.of("p4"), names(cache.getPage(-3, 1)), "отрицательное начало - с первого места");
+    }
+
+    @Test
+    void pageSplitsTiesInsideScore() {
+        cache.offer("top", 9);
+        for (String name : List.of("d", "b", "e", "a", "c")) {
+            cache.offer(name, 4);
+        }
+        cache.offer("low", 1);
+
+        assertEquals(List.of("top", "a", "b"), names(cache.getPage(0, 3)));
+        assertEquals(List.of("c", "d", "e"), names(cache.getPage(3, 3)));
+        assertEquals(List.of("low"), names(cache.getPage(6, 3)));
+        for (ScoreboardEntry entry : cache.getPage(1, 5)) {
+            assertEquals(4, entry.getWins());
+        }
+    }
+
+    @Test
+    void pagesStayConsistentWhenTiedPlayersLeaveScore() {
+        // Раньше игрок удалялся из списка результата обменом с последним,
+        // и порядок внутри результата менялся между страницами
+        for (int i = 0; i < 20; i++) {
+            cache.offer(String.format("p%02d", i), 5);
+        }
+        List<String> firstPage = names(cache.getPage(0, 10));
+        cache.offer("p03", 6); // ушел из результата 5 наверх
+        cache.offer("p00", 7);
+
+        Set<String> seen = new HashSet<>();
+        for (int offset = 0; offset < cache.getSize(); offset += 10) {
+            for (String name : names(cache.getPage(offset, 10))) {
+                assertTrue(seen.add(name), "игрок " + name + " на двух страницах");
+            }
+        }
+        assertEquals(20, seen.size(), "никто не пропал");
+        assertEquals(List.of("p00", "p03", "p01", "p02", "p04", "p05", "p06", "p07", "p08", "p09"),
+                names(cache.getPage(0, 10)));
+        assertEquals(List.of("p00", "p01", "p02", "p03", "p04", "p05", "p06", "p07", "p08", "p09"), firstPage);
+    }
+
+    @Test
+    void treeGrowsPastInitialScoreRange() {
+        cache.offer("small", 3);
+        cache.offer("mid", 63);
+        cache.offer("big", 64); // первый результат за начальной емкостью
+        cache.offer("huge", 1000); // несколько удвоений подряд
+        cache.offer("huge2", 1000);
+
+        assertEquals(1, cache.getRank("huge"));
+        assertEquals(1, cache.getRank("huge2"));
+        assertEquals(3, cache.getRank("big"));
+        assertEquals(4, cache.getRank("mid"));
+        assertEquals(5, cache.getRank("small"));
+        assertEquals(List.of("huge", "huge2", "big", "mid", "small"), names(cache.getPage(0, 10)));
+        assertEquals(100.0 * 0.5 / 5, cache.getPercentile("small"), 1e-9);
+
+        cache.offer("small", 5000);
+        assertEquals(1, cache.getRank("small"));
+        assertEquals(List.of("small", "huge", "huge2", "big", "mid"), names(cache.getPage(0, 10)));
+    }
+
+    @Test
+    void loadsExistingTableSortedByScoreThenName() {
+        repository.updateIfBetter("c", 6);
+        repository.updateIfBetter("a", 6);
+        repository.updateIfBetter("b", 6);
+        repository.updateIfBetter("z", 100);
+
+        LeaderboardCache loaded = new LeaderboardCache(repository);
+        assertEquals(4, loaded.getSize());
+        assertEquals(List.of("z", "a", "b", "c"), names(loaded.getPage(0, 10)));
+        assertEquals(2, loaded.getRank("c"));
+    }
+}